@@ -0,0 +1,135 @@
+package red;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+// Costo de GameSim.tick según la cantidad de termos en pantalla y de jugadores en la sala.
+// Cada invocación arranca una partida nueva y corre diez segundos (600 ticks) con saltos
+// periódicos de todos los jugadores, así la cantidad de termos no deriva entre iteraciones.
+// El reset va dentro de la invocación (no en un @Setup(Level.Invocation), que en algo tan
+// corto mide más a JMH que al tick) y se reparte entre los 600 ticks.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GameSimBenchmark {
+
+    private static final int TICKS = 600;
+
+    @State(Scope.Thread)
+    public static class Partida {
+        @Param({"2", "8", "32"})
+        int termos;
+
+        @Param({"2", "8", "32", "64"})
+        int jugadores;
+
+        GameSim sim;
+
+        @Setup(Level.Trial)
+        public void crear() {
+            sim = new GameSim(jugadores);
+        }
+    }
+
+    // Estado congelado en un tick, para medir solo la codificación
+    @State(Scope.Thread)
+    public static class Snapshot {
+        @Param({"2", "8", "32"})
+        int termos;
+
+        @Param({"2", "64"})
+        int jugadores;
+
+        GameSim sim;
+        HistorialSnapshots historial;
+        InteresJugadores interes;
+        ByteBuffer buf;
+        int tick;
+        int base;
+
+        @Setup(Level.Trial)
+        public void crear() {
+            sim = new GameSim(jugadores);
+            sim.resetWithTermos(termos);
+            historial = new HistorialSnapshots(jugadores);
+            buf = ByteBuffer.allocateDirect(GameSim.maxStateBytes());
+
+            // Base confirmada hace 6 ticks (~100 ms de RTT)
+            for (tick = 0; tick < 30; tick++) {
+                if (tick % 20 == 0) saltarTodos(sim);
+                sim.tick();
+                historial.registrar(tick, sim);
+            }
+            tick--;
+            base = tick - 6;
+
+            interes = new InteresJugadores(jugadores);
+            interes.preparar(sim);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TICKS)
+    public void tick(Partida p, Blackhole bh) {
+        GameSim sim = p.sim;
+        sim.resetWithTermos(p.termos);
+        for (int i = 0; i < TICKS; i++) {
+            if (i % 20 == 0) saltarTodos(sim);
+            sim.tick();
+        }
+        bh.consume(sim.score(1));
+    }
+
+    private static void saltarTodos(GameSim sim) {
+        for (int id = 1; id <= sim.jugadores(); id++) sim.queueJump(id);
+    }
+
+    @Benchmark
+    public String buildState(Snapshot s) {
+        return s.sim.buildState(s.tick);
+    }
+
+    @Benchmark
+    public int writeState(Snapshot s) {
+        ByteBuffer b = s.buf;
+        b.clear();
+        s.sim.writeState(s.tick, b);
+        return b.position();
+    }
+
+    // Delta para un espectador, con todos los mates exactos en su base
+    @Benchmark
+    public int writeDelta(Snapshot s) {
+        ByteBuffer b = s.buf;
+        b.clear();
+        s.historial.writeDelta(s.tick, s.base, 1, s.interes.relevantes(1, 0), -1L, b);
+        return b.position();
+    }
+
+    // Deltas de todos los espectadores de la sala en un tick (misma base): muestra cuánto
+    // ahorran las entradas compartidas frente a jugadores²
+    @Benchmark
+    public int deltasSala(Snapshot s, Blackhole bh) {
+        ByteBuffer b = s.buf;
+        int total = 0;
+        s.historial.limpiarCache();
+        s.interes.preparar(s.sim);
+        for (int id = 1; id <= s.jugadores; id++) {
+            b.clear();
+            bh.consume(s.historial.writeDelta(s.tick, s.base, id, s.interes.relevantes(id, id), -1L, b));
+            total += b.position();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,178 @@
+package red;
+
+import com.badlogic.Flappy.SnapshotFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Costo de HiloServidorFlappy.procesarPaquete por tipo de mensaje, para un cliente en una
+// partida en curso: se registran dos clientes, los dos mandan READY=1 y la sala arranca.
+// Después de su primer tick se la saca del worker (HiloServidorFlappy#congelarSala): la
+// partida sigue activa, con los mates vivos, y los ACK son de un tick que existe.
+// No se arranca el hilo de recepción: el benchmark llama directo con un buffer directo,
+// igual que recibirPendientes(). Las respuestas (PONG, LOBBY, ...) salen de verdad a
+// puertos descartables de loopback, así que su costo de envío está incluido.
+//
+// INPUT mide la entrada completa de un salto: cada uno trae un seq nuevo (y el anterior
+// en ant=, como el cliente), y el benchmark hace también la parte del worker (vaciar el
+// buzón a BufferEntradas y tomar el salto). Así se inserta de verdad, sin descartarse por
+// repetido ni por buzón lleno. Los dígitos se reescriben en el mismo buffer, con ancho
+// fijo, sin armar el mensaje de nuevo.
+//
+// Iteraciones de 1 s: el rival solo manda algo entre iteraciones, y con más de
+// HiloServidorFlappy.TIMEOUT_MS sin noticias suyas la partida se aborta.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class PaquetesBenchmark {
+
+    @Param({"PING", "ACK", "INPUT", "READY", "HELLO", "DESCONOCIDO"})
+    String tipo;
+
+    private HiloServidorFlappy server;
+    private InetSocketAddress origen;
+    private InetSocketAddress rival;
+    private Cliente cliente;
+    private GameSim sim;
+    private BufferEntradas entradas;
+    private ByteBuffer buf;
+    private int largo;
+
+    // INPUT: seq del próximo salto (sigue entre iteraciones) y dónde van sus dígitos
+    private static final int DIGITOS_SEQ = 9;
+    private int seq = 1;
+    private int posSeq = -1;
+    private int posAnt = -1;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        LoggerRed.setNivel(LoggerRed.ERROR);
+
+        server = new HiloServidorFlappy(0);
+        origen = new InetSocketAddress("127.0.0.1", 9);
+        rival = new InetSocketAddress("127.0.0.1", 19);
+        buf = ByteBuffer.allocateDirect(1400);
+    }
+
+    // Mantiene vivos a los dos y la partida en curso (si se abortó, la vuelve a arrancar;
+    // si el servidor los olvidó, los registra de nuevo)
+    @Setup(Level.Iteration)
+    public void partida() throws InterruptedException {
+        cliente = server.cliente(origen);
+        Cliente otro = server.cliente(rival);
+        if (cliente == null || otro == null) {
+            mandar("DISCONNECT", origen);
+            mandar("DISCONNECT", rival);
+            mandar(SnapshotFormat.CONNECT_BINARY, origen);
+            mandar(SnapshotFormat.CONNECT_BINARY, rival);
+            cliente = server.cliente(origen);
+            otro = server.cliente(rival);
+        }
+        if (cliente == null || otro == null || otro.sala != cliente.sala) {
+            throw new IllegalStateException("los dos clientes tienen que quedar en la misma sala");
+        }
+        mandar("PING", origen);
+        mandar("PING", rival);
+
+        Sala sala = cliente.sala;
+        if (!sala.partidaActiva) {
+            mandar("READY=1", origen);
+            mandar("READY=1", rival);
+        }
+        long limite = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!sala.partidaActiva || sala.tick < 1) {
+            if (System.nanoTime() > limite) throw new IllegalStateException("la partida no arrancó");
+            Thread.sleep(1);
+        }
+        server.congelarSala(sala);
+        sim = sala.sim;
+        entradas = sim.entradas(cliente.id);
+        if (!sim.isAlive(cliente.id)) throw new IllegalStateException("el mate murió antes de congelar la sala");
+
+        cargar(mensaje(tipo, sala.tick - 1));
+        if (tipo.equals("INPUT")) {
+            posSeq = indice("seq=") + 4;
+            posAnt = indice("ant=") + 4;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void apagar() {
+        server.apagarServidor("benchmark");
+    }
+
+    @Benchmark
+    public void procesarPaquete() {
+        buf.limit(largo);
+        buf.position(0);
+        if (posSeq >= 0) {
+            seq++;
+            escribirDigitos(posSeq, seq);
+            escribirDigitos(posAnt, seq - 1);
+            server.procesarPaquete(buf, origen);
+            sim.vaciarBuzon();
+            entradas.tomar(sim.tickCount());
+            return;
+        }
+        server.procesarPaquete(buf, origen);
+    }
+
+    private void escribirDigitos(int pos, int v) {
+        for (int i = pos + DIGITOS_SEQ - 1; i >= pos; i--) {
+            buf.put(i, (byte) ('0' + v % 10));
+            v /= 10;
+        }
+    }
+
+    private int indice(String campo) {
+        byte[] b = campo.getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i + b.length <= largo; i++) {
+            int k = 0;
+            while (k < b.length && buf.get(i + k) == b[k]) k++;
+            if (k == b.length) return i;
+        }
+        throw new IllegalStateException("falta " + campo);
+    }
+
+    private void mandar(String msg, InetSocketAddress desde) {
+        posSeq = -1;
+        cargar(msg);
+        server.procesarPaquete(buf, desde);
+    }
+
+    private void cargar(String msg) {
+        byte[] b = msg.getBytes(StandardCharsets.US_ASCII);
+        buf.clear();
+        buf.put(b);
+        buf.flip();
+        largo = b.length;
+    }
+
+    // tick: uno que la sala ya simuló
+    private static String mensaje(String tipo, int tick) {
+        switch (tipo) {
+            case "PING": return "PING";
+            case "ACK": return SnapshotFormat.ACK_PREFIX + tick;
+            case "INPUT": return "INPUT;jump=1;seq=000000000;tick=" + tick + ";ant=000000000@" + (tick - 9);
+            case "READY": return "READY=1";
+            case "HELLO": return "Hello_There";
+            default: return "ALGO_QUE_NO_EXISTE;x=1";
+        }
+    }
+}
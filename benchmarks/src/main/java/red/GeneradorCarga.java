@@ -0,0 +1,445 @@
+package red;
+
+import com.badlogic.Flappy.Snapshot;
+import com.badlogic.Flappy.SnapshotFormat;
+import com.badlogic.Flappy.SnapshotReceiver;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+// Generador de carga: simula muchos jugadores UDP contra HiloServidorFlappy hablando el
+// protocolo completo (Hello_There, Conectar, READY=1, INPUT;jump=1;seq=N, ACK, PING,
+// DISCONNECT) y mide paquetes por segundo, jitter entre snapshots, snapshots perdidos y
+// RTT de PING/PONG. Cada jugador reporta su RTT (PING;rtt=N) y el servidor le contesta su
+// tasa de snapshots (PONG;hz=N): los perdidos se cuentan contra esa tasa, no contra 60 Hz.
+// En modo cola entran por matchmaking (QUEUE;rtt=N;jugador=cN, con RTT inventados de 10 a
+// 200 ms para repartirlos en cubetas) en vez de Conectar; el servidor loguea las esperas.
+//
+// Uso: GeneradorCarga [host] [puerto] [jugadores] [segundos] [bin|texto|cola] [hilos]
+//      ./gradlew benchmarks:cargar --args="127.0.0.1 4321 2000 30 bin 4"
+public final class GeneradorCarga {
+
+    private static final long TICK_NS = 1_000_000_000L / SnapshotFormat.TICK_RATE;
+    private static final long PING_CADA_NS = 1_000_000_000L;
+
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "127.0.0.1";
+        int puerto = args.length > 1 ? Integer.parseInt(args[1]) : 4321;
+        int jugadores = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int segundos = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        boolean binario = args.length <= 4 || !"texto".equals(args[4]);
+        boolean cola = args.length > 4 && "cola".equals(args[4]);
+        int hilos = args.length > 5 ? Integer.parseInt(args[5]) : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+        InetSocketAddress server = new InetSocketAddress(host, puerto);
+        System.out.printf(Locale.US, "Carga: %d jugadores (%s) contra %s durante %d s con %d hilos%n",
+            jugadores, cola ? "cola" : binario ? "bin" : "texto", server, segundos, hilos);
+
+        Grupo[] grupos = new Grupo[hilos];
+        for (int i = 0; i < hilos; i++) grupos[i] = new Grupo(i, server, binario, cola);
+        for (int j = 0; j < jugadores; j++) grupos[j % hilos].agregar(j);
+        for (Grupo g : grupos) g.start();
+
+        long inicio = System.nanoTime();
+        long fin = inicio + segundos * 1_000_000_000L;
+        Metricas anterior = new Metricas();
+        long tAnterior = inicio;
+
+        while (System.nanoTime() < fin) {
+            Thread.sleep(Math.max(1L, Math.min(5000L, (fin - System.nanoTime()) / 1_000_000L)));
+            Metricas m = sumar(grupos);
+            long ahora = System.nanoTime();
+            System.out.println(m.intervalo(anterior, (ahora - tAnterior) / 1e9));
+            anterior = m;
+            tAnterior = ahora;
+        }
+
+        for (Grupo g : grupos) g.terminar();
+        for (Grupo g : grupos) g.join(2000);
+
+        System.out.println();
+        System.out.println(sumar(grupos).resumenFinal((System.nanoTime() - inicio) / 1e9));
+    }
+
+    private static Metricas sumar(Grupo[] grupos) {
+        Metricas total = new Metricas();
+        for (Grupo g : grupos) {
+            synchronized (g.metricas) {
+                total.sumar(g.metricas);
+            }
+        }
+        return total;
+    }
+
+    // =========================
+    // Jugador simulado
+    // =========================
+    private static final class Jugador {
+        final int numero;
+        final DatagramChannel canal;
+        final SnapshotReceiver receptor = new SnapshotReceiver();
+
+        boolean conectado;
+        boolean enPartida;
+        int slot; // 1..n según "Registrado con ID n"
+        int seq;
+
+        int ultimoTick = -1;
+        long ultimoSnapshotNs;
+        int paso = 1; // ticks entre snapshots según PONG;hz=
+
+        long rttUs = -1;
+        long pingEnviadoNs;
+        long proximoPingNs;
+
+        long ultimoIntentoNs;
+        int rttCola; // el que declara en QUEUE
+
+        Jugador(int numero, DatagramChannel canal) {
+            this.numero = numero;
+            this.canal = canal;
+        }
+    }
+
+    // =========================
+    // Un hilo con su Selector maneja un grupo de jugadores
+    // =========================
+    private static final class Grupo extends Thread {
+        final InetSocketAddress server;
+        final boolean binario;
+        final boolean cola;
+        final Selector selector;
+        final List<Jugador> jugadores = new ArrayList<>();
+        final Metricas metricas = new Metricas();
+        final ByteBuffer rx = ByteBuffer.allocateDirect(2048);
+        final byte[] rxBytes = new byte[2048];
+        final Random rng;
+        volatile boolean activo = true;
+
+        Grupo(int i, InetSocketAddress server, boolean binario, boolean cola) throws IOException {
+            super("Carga-" + i);
+            this.server = server;
+            this.binario = binario;
+            this.cola = cola;
+            this.selector = Selector.open();
+            this.rng = new Random(i);
+            setDaemon(true);
+        }
+
+        void agregar(int numero) throws IOException {
+            DatagramChannel ch = DatagramChannel.open();
+            ch.setOption(StandardSocketOptions.SO_RCVBUF, 256 * 1024);
+            ch.configureBlocking(false);
+            ch.connect(server);
+            Jugador j = new Jugador(numero, ch);
+            j.rttCola = 10 + rng.nextInt(191);
+            ch.register(selector, SelectionKey.OP_READ, j);
+            jugadores.add(j);
+        }
+
+        void terminar() {
+            activo = false;
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try {
+                long t0 = System.nanoTime();
+                for (Jugador j : jugadores) {
+                    enviar(j, "Hello_There");
+                    enviar(j, registro(j));
+                    j.ultimoIntentoNs = t0;
+                    j.proximoPingNs = t0 + rng.nextInt(1_000_000_000);
+                }
+
+                while (activo) {
+                    selector.select(1);
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey k = it.next();
+                        it.remove();
+                        recibir((Jugador) k.attachment());
+                    }
+                    timers(System.nanoTime());
+                }
+
+                for (Jugador j : jugadores) {
+                    enviar(j, "DISCONNECT");
+                    j.canal.close();
+                }
+                selector.close();
+            } catch (IOException e) {
+                System.err.println(getName() + ": " + e);
+            }
+        }
+
+        private void timers(long ahora) throws IOException {
+            for (int i = 0; i < jugadores.size(); i++) {
+                Jugador j = jugadores.get(i);
+
+                // Reintento de registro (UDP puede perder el Conectar); en la cola, keepalive
+                if (!j.conectado && ahora - j.ultimoIntentoNs > 1_000_000_000L) {
+                    j.ultimoIntentoNs = ahora;
+                    enviar(j, registro(j));
+                }
+
+                if (j.conectado && ahora >= j.proximoPingNs) {
+                    j.proximoPingNs = ahora + PING_CADA_NS;
+                    if (j.pingEnviadoNs != 0L) {
+                        synchronized (metricas) {
+                            metricas.pingsPerdidos++;
+                        }
+                    }
+                    j.pingEnviadoNs = ahora;
+                    enviar(j, j.rttUs < 0 ? "PING" : "PING;rtt=" + j.rttUs / 1000L);
+                }
+            }
+        }
+
+        private String registro(Jugador j) {
+            if (cola) return "QUEUE;proto=bin;v=" + SnapshotFormat.VERSION + ";rtt=" + j.rttCola + ";jugador=c" + j.numero;
+            return binario ? SnapshotFormat.CONNECT_BINARY : "Conectar";
+        }
+
+        private void recibir(Jugador j) throws IOException {
+            while (true) {
+                rx.clear();
+                SocketAddress from;
+                try {
+                    from = j.canal.receive(rx);
+                } catch (PortUnreachableException e) {
+                    // ICMP de un envío anterior: el server no está (todavía o ya)
+                    synchronized (metricas) {
+                        metricas.inalcanzable++;
+                    }
+                    return;
+                }
+                if (from == null) return;
+                rx.flip();
+                int len = rx.remaining();
+                rx.get(rxBytes, 0, len);
+
+                long ahora = System.nanoTime();
+                synchronized (metricas) {
+                    metricas.paquetesIn++;
+                    metricas.bytesIn += len;
+                }
+
+                if (binario && len > 0 && rxBytes[0] == SnapshotFormat.MAGIC) {
+                    Snapshot s = j.receptor.receive(rxBytes, len);
+                    if (s != null) {
+                        snapshot(j, s.tick, ahora);
+                        enviar(j, SnapshotFormat.ACK_PREFIX + s.tick);
+                        int i = j.slot - 1;
+                        if (i >= 0 && i < s.playerCount) jugar(j, s.y[i], s.vy[i], s.alive[i]);
+                    }
+                    continue;
+                }
+
+                String msg = new String(rxBytes, 0, len, StandardCharsets.UTF_8);
+                texto(j, msg, ahora);
+            }
+        }
+
+        private void texto(Jugador j, String msg, long ahora) throws IOException {
+            if (msg.startsWith("Conectado")) {
+                j.conectado = true;
+            } else if (msg.startsWith("Registrado con ID ")) {
+                j.slot = Integer.parseInt(msg.substring("Registrado con ID ".length()).trim());
+                // Por la cola ya llega listo
+                if (!cola) enviar(j, "READY=1");
+            } else if (msg.startsWith("PARTIDA_INICIADA")) {
+                // PARTIDA_INICIADA;seed=-123: de ahí salen los termos de los snapshots
+                int i = msg.indexOf("seed=");
+                j.enPartida = true;
+                j.receptor.reset(i < 0 ? 0L : Long.parseLong(msg.substring(i + 5).trim()));
+                j.ultimoTick = -1;
+            } else if (msg.equals("PARTIDA_ABORTADA")) {
+                j.enPartida = false;
+                enviar(j, "READY=1");
+            } else if (msg.startsWith("PONG")) {
+                int i = msg.indexOf("hz=");
+                if (i >= 0) {
+                    j.paso = Math.max(1, SnapshotFormat.TICK_RATE / Integer.parseInt(msg.substring(i + 3).trim()));
+                    synchronized (metricas) {
+                        metricas.tasas.merge(SnapshotFormat.TICK_RATE / j.paso, 1L, Long::sum);
+                    }
+                }
+                if (j.pingEnviadoNs != 0L) {
+                    j.rttUs = (ahora - j.pingEnviadoNs) / 1000L;
+                    synchronized (metricas) {
+                        metricas.rtt.agregar(j.rttUs);
+                    }
+                    j.pingEnviadoNs = 0L;
+                }
+            } else if (msg.startsWith("STATE;")) {
+                // STATE;tick=N;P1=y,vy,alive,score;P2=...
+                String[] f = msg.split(";");
+                int tick = Integer.parseInt(f[1].substring(5));
+                snapshot(j, tick, ahora);
+                if (j.slot < 1 || f.length < 2 + j.slot) return;
+                String campo = f[1 + j.slot];
+                String[] p = campo.substring(campo.indexOf('=') + 1).split(",");
+                jugar(j, Float.parseFloat(p[0]), Float.parseFloat(p[1]), "1".equals(p[2]));
+            } else if (msg.startsWith("No_registrado")) {
+                j.conectado = false;
+            } else if (msg.startsWith("SERVER_ERROR;code=FULL")) {
+                // Server lleno: no reintenta más
+                j.conectado = true;
+                synchronized (metricas) {
+                    metricas.rechazados++;
+                }
+            }
+        }
+
+        private void snapshot(Jugador j, int tick, long ahora) {
+            synchronized (metricas) {
+                metricas.snapshots++;
+                if (j.ultimoTick >= 0 && tick > j.ultimoTick + j.paso) {
+                    metricas.snapshotsPerdidos += (tick - j.ultimoTick - 1) / j.paso;
+                }
+                if (j.ultimoTick >= 0 && tick > j.ultimoTick) {
+                    // Desvío de la llegada respecto de lo esperado por los ticks transcurridos
+                    long esperado = (tick - j.ultimoTick) * TICK_NS;
+                    long desvio = Math.abs((ahora - j.ultimoSnapshotNs) - esperado);
+                    metricas.jitter.agregar(desvio / 1000L);
+                }
+            }
+            if (tick > j.ultimoTick) {
+                j.ultimoTick = tick;
+                j.ultimoSnapshotNs = ahora;
+            }
+        }
+
+        // Bot simple: salta cuando cae por debajo de la mitad de la pantalla
+        private void jugar(Jugador j, float y, float vy, boolean vivo) throws IOException {
+            if (!j.enPartida || !vivo) return;
+            if (y < 380f && vy < 0f) {
+                enviar(j, "INPUT;jump=1;seq=" + (++j.seq));
+            }
+        }
+
+        private void enviar(Jugador j, String msg) throws IOException {
+            byte[] b = msg.getBytes(StandardCharsets.US_ASCII);
+            try {
+                j.canal.write(ByteBuffer.wrap(b));
+            } catch (PortUnreachableException e) {
+                synchronized (metricas) {
+                    metricas.inalcanzable++;
+                }
+                return;
+            }
+            synchronized (metricas) {
+                metricas.paquetesOut++;
+                metricas.bytesOut += b.length;
+            }
+        }
+    }
+
+    // =========================
+    // Métricas
+    // =========================
+    private static final class Metricas {
+        long paquetesIn, paquetesOut, bytesIn, bytesOut;
+        long snapshots, snapshotsPerdidos, pingsPerdidos, rechazados, inalcanzable;
+        // PONG;hz= recibidos por tasa (Hz -> cantidad)
+        final Map<Integer, Long> tasas = new TreeMap<>(Collections.reverseOrder());
+        final Histograma rtt = new Histograma();
+        final Histograma jitter = new Histograma();
+
+        void sumar(Metricas o) {
+            paquetesIn += o.paquetesIn;
+            paquetesOut += o.paquetesOut;
+            bytesIn += o.bytesIn;
+            bytesOut += o.bytesOut;
+            snapshots += o.snapshots;
+            snapshotsPerdidos += o.snapshotsPerdidos;
+            pingsPerdidos += o.pingsPerdidos;
+            rechazados += o.rechazados;
+            inalcanzable += o.inalcanzable;
+            o.tasas.forEach((hz, n) -> tasas.merge(hz, n, Long::sum));
+            rtt.sumar(o.rtt);
+            jitter.sumar(o.jitter);
+        }
+
+        String intervalo(Metricas antes, double seg) {
+            return String.format(Locale.US,
+                "in=%.0f pkt/s (%.1f KB/s) out=%.0f pkt/s snaps=%.0f/s perdidos=%d rtt p50=%.2fms p99=%.2fms jitter p99=%.2fms",
+                (paquetesIn - antes.paquetesIn) / seg,
+                (bytesIn - antes.bytesIn) / seg / 1024.0,
+                (paquetesOut - antes.paquetesOut) / seg,
+                (snapshots - antes.snapshots) / seg,
+                snapshotsPerdidos - antes.snapshotsPerdidos,
+                rtt.percentil(0.50) / 1000.0, rtt.percentil(0.99) / 1000.0,
+                jitter.percentil(0.99) / 1000.0);
+        }
+
+        String resumenFinal(double seg) {
+            long esperados = snapshots + snapshotsPerdidos;
+            return String.format(Locale.US,
+                "TOTAL %.1f s%n"
+                    + "  rechazados por server lleno=%d  puerto inalcanzable=%d%n"
+                    + "  paquetes in=%d (%.0f/s, %.1f KB/s)  out=%d (%.0f/s)%n"
+                    + "  snapshots=%d perdidos=%d (%.3f%%)%n"
+                    + "  jitter llegada (us): p50=%d p90=%d p99=%d max=%d%n"
+                    + "  rtt ping (us): n=%d p50=%d p90=%d p99=%d max=%d  pings sin respuesta=%d%n"
+                    + "  tasa de snapshots (Hz=pongs): %s",
+                seg,
+                rechazados, inalcanzable,
+                paquetesIn, paquetesIn / seg, bytesIn / seg / 1024.0, paquetesOut, paquetesOut / seg,
+                snapshots, snapshotsPerdidos, esperados == 0 ? 0.0 : 100.0 * snapshotsPerdidos / esperados,
+                jitter.percentil(0.50), jitter.percentil(0.90), jitter.percentil(0.99), jitter.max,
+                rtt.cantidad, rtt.percentil(0.50), rtt.percentil(0.90), rtt.percentil(0.99), rtt.max,
+                pingsPerdidos, tasas);
+        }
+    }
+
+    // Histograma de microsegundos: cubetas de 10 us hasta 1 s, el resto en la última
+    private static final class Histograma {
+        static final int ANCHO_US = 10;
+        final long[] cubetas = new long[100_000];
+        long cantidad;
+        long max;
+
+        void agregar(long us) {
+            int i = (int) Math.min(cubetas.length - 1, Math.max(0L, us) / ANCHO_US);
+            cubetas[i]++;
+            cantidad++;
+            if (us > max) max = us;
+        }
+
+        void sumar(Histograma o) {
+            for (int i = 0; i < cubetas.length; i++) cubetas[i] += o.cubetas[i];
+            cantidad += o.cantidad;
+            max = Math.max(max, o.max);
+        }
+
+        long percentil(double p) {
+            if (cantidad == 0) return 0;
+            long objetivo = (long) Math.ceil(p * cantidad);
+            long acc = 0;
+            for (int i = 0; i < cubetas.length; i++) {
+                acc += cubetas[i];
+                if (acc >= objetivo) return (long) i * ANCHO_US;
+            }
+            return max;
+        }
+    }
+}
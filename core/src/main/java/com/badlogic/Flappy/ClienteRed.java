@@ -0,0 +1,293 @@
+package com.badlogic.Flappy;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cliente UDP del modo online. No usa gdx: la pantalla llama a {@link #recibir()} en cada
+ * frame y este maneja el handshake, el lobby, los PING y los ACK de snapshots.
+ *
+ * <p>El servidor se busca por broadcast en la LAN (Hello_There / General_Kenobi), salvo
+ * que se fije con {@code -Dflappy.server=host}. El puerto es {@code -Dflappy.puerto}
+ * (4321 por defecto, como ServerLauncher).
+ *
+ * <p>Con {@link Settings#matchmaking} se entra por la cola del servidor (QUEUE) en vez de
+ * ir al primer lobby con lugar: el servidor arma el grupo por RTT y puntaje y nos manda
+ * directo a la partida. Un servidor sin cola contesta No_registrado y se cae al lobby.
+ */
+public class ClienteRed {
+
+    public enum Estado { BUSCANDO, CONECTANDO, EN_COLA, LOBBY, EN_PARTIDA, ERROR }
+
+    public static final int PUERTO_DEFAULT = 4321;
+
+    private static final long REINTENTO_NS = 1_000_000_000L;
+    private static final long PING_CADA_NS = 1_000_000_000L;
+
+    // Saltos por INPUT: el nuevo más los anteriores sin confirmar (redundancia ante pérdida)
+    public static final int SALTOS_POR_INPUT = 8;
+
+    private final int puerto;
+    private final String host;
+    private final boolean matchmaking;
+
+    private DatagramChannel canal;
+    private SocketAddress servidor;
+    private final ByteBuffer rx = ByteBuffer.allocate(2048);
+    private final byte[] rxBytes = new byte[2048];
+    private final SnapshotReceiver receptor = new SnapshotReceiver();
+
+    private Estado estado = Estado.BUSCANDO;
+    private String detalleError = "";
+    private int slot = -1;          // 1..capacidad de la sala
+    private boolean listo;
+    private boolean rivalListo;
+    private int enSala;             // jugadores en el lobby, contándome
+    private int listosEnSala;
+    private long esperaColaMs;      // lo que el servidor dice que llevamos en la cola
+    private int enCola;             // jugadores en la cola, contándome
+
+    private long ultimoIntentoNs;
+    private long proximoPingNs;
+    private long pingEnviadoNs;
+    private long colaEnviadoNs;
+    private float rttMs = -1f;
+    private int snapshotHz = SnapshotFormat.TICK_RATE;
+
+    private final int[] saltoSeqs = new int[SALTOS_POR_INPUT];
+    private final int[] saltoTicks = new int[SALTOS_POR_INPUT];
+    private final StringBuilder sb = new StringBuilder(128);
+
+    public ClienteRed() {
+        this(System.getProperty("flappy.server", ""), Integer.getInteger("flappy.puerto", PUERTO_DEFAULT));
+    }
+
+    public ClienteRed(String host, int puerto) {
+        this.host = host == null ? "" : host.trim();
+        this.puerto = puerto;
+        this.matchmaking = Settings.matchmaking;
+    }
+
+    public void iniciar() throws IOException {
+        canal = DatagramChannel.open();
+        canal.setOption(StandardSocketOptions.SO_BROADCAST, true);
+        canal.configureBlocking(false);
+        canal.bind(null);
+        ultimoIntentoNs = System.nanoTime() - REINTENTO_NS;
+    }
+
+    public void cerrar() {
+        if (canal == null) return;
+        try {
+            if (servidor != null) enviar("DISCONNECT");
+            canal.close();
+        } catch (IOException ignored) {}
+        canal = null;
+    }
+
+    /**
+     * Procesa lo que llegó y devuelve el próximo snapshot decodificado, o null cuando no
+     * queda nada. Llamarlo en un loop una vez por frame.
+     */
+    public Snapshot recibir() {
+        if (canal == null) return null;
+        try {
+            timers(System.nanoTime());
+
+            while (true) {
+                rx.clear();
+                SocketAddress from = canal.receive(rx);
+                if (from == null) return null;
+                if (servidor != null && !from.equals(servidor)) continue;
+
+                rx.flip();
+                int len = rx.remaining();
+                rx.get(rxBytes, 0, len);
+
+                if (SnapshotDecoder.isSnapshot(rxBytes, len)) {
+                    if (estado != Estado.EN_PARTIDA) continue;
+                    Snapshot s = receptor.receive(rxBytes, len);
+                    if (s == null) continue;
+                    enviar(SnapshotFormat.ACK_PREFIX + s.tick);
+                    return s;
+                }
+
+                texto(from, new String(rxBytes, 0, len, StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            error("red: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void timers(long ahora) throws IOException {
+        if (estado == Estado.BUSCANDO && ahora - ultimoIntentoNs >= REINTENTO_NS) {
+            ultimoIntentoNs = ahora;
+            SocketAddress destino = host.isEmpty()
+                ? new InetSocketAddress("255.255.255.255", puerto)
+                : new InetSocketAddress(host, puerto);
+            canal.send(ByteBuffer.wrap("Hello_There".getBytes(StandardCharsets.US_ASCII)), destino);
+        } else if (estado == Estado.CONECTANDO && ahora - ultimoIntentoNs >= REINTENTO_NS) {
+            ultimoIntentoNs = ahora;
+            enviar(SnapshotFormat.CONNECT_BINARY);
+        } else if (estado == Estado.EN_COLA && ahora - ultimoIntentoNs >= REINTENTO_NS) {
+            // El QUEUE repetido nos mantiene en la cola y trae otra muestra de RTT
+            ultimoIntentoNs = ahora;
+            enviarQueue(ahora);
+        }
+
+        if ((estado == Estado.LOBBY || estado == Estado.EN_PARTIDA) && ahora >= proximoPingNs) {
+            proximoPingNs = ahora + PING_CADA_NS;
+            pingEnviadoNs = ahora;
+            // El servidor usa el RTT para elegir cada cuánto mandarnos snapshots
+            enviar(rttMs < 0f ? "PING" : "PING;rtt=" + Math.round(rttMs));
+        }
+    }
+
+    private void texto(SocketAddress from, String msg) throws IOException {
+        if (msg.equals("General_Kenobi")) {
+            if (estado != Estado.BUSCANDO) return;
+            servidor = from;
+            long ahora = System.nanoTime();
+            // Primera muestra de RTT: la del handshake (la cola la usa para agruparnos)
+            muestraRtt((ahora - ultimoIntentoNs) / 1e6f);
+            ultimoIntentoNs = ahora;
+            if (matchmaking) {
+                estado = Estado.EN_COLA;
+                enviarQueue(ahora);
+            } else {
+                estado = Estado.CONECTANDO;
+                enviar(SnapshotFormat.CONNECT_BINARY);
+            }
+        } else if (msg.startsWith("EN_COLA;")) {
+            // EN_COLA;espera=1200;cola=14
+            if (colaEnviadoNs != 0L) {
+                muestraRtt((System.nanoTime() - colaEnviadoNs) / 1e6f);
+                colaEnviadoNs = 0L;
+            }
+            esperaColaMs = campo(msg, "espera=");
+            enCola = (int) campo(msg, "cola=");
+        } else if (msg.startsWith("Conectado")) {
+            if (!msg.startsWith(SnapshotFormat.CONNECTED_BINARY)) {
+                error("el servidor no soporta la versión " + SnapshotFormat.VERSION + " del protocolo");
+            }
+        } else if (msg.startsWith("Registrado con ID ")) {
+            slot = Integer.parseInt(msg.substring("Registrado con ID ".length()).trim());
+            if (estado == Estado.CONECTANDO || estado == Estado.EN_COLA) estado = Estado.LOBBY;
+        } else if (msg.startsWith("LOBBY;")) {
+            // LOBBY;READY_P1=0;READY_P2=1 (un campo por slot ocupado)
+            enSala = 0;
+            listosEnSala = 0;
+            rivalListo = false;
+            for (int i = msg.indexOf("READY_P"); i >= 0; i = msg.indexOf("READY_P", i + 1)) {
+                int eq = msg.indexOf('=', i);
+                if (eq < 0 || eq + 1 >= msg.length()) break;
+                boolean ok = msg.charAt(eq + 1) == '1';
+                enSala++;
+                if (!ok) continue;
+                listosEnSala++;
+                if (!msg.startsWith("READY_P" + slot + "=", i)) rivalListo = true;
+            }
+        } else if (msg.startsWith("PARTIDA_INICIADA")) {
+            // PARTIDA_INICIADA;seed=-123: los termos los generamos nosotros (TermoLayout)
+            receptor.reset(campo(msg, "seed="));
+            estado = Estado.EN_PARTIDA;
+        } else if (msg.equals("PARTIDA_ABORTADA")) {
+            listo = false;
+            rivalListo = false;
+            estado = Estado.LOBBY;
+        } else if (msg.equals("PONG") || msg.startsWith("PONG;")) {
+            // PONG;hz=30: tasa de snapshots que nos asignó el servidor
+            int i = msg.indexOf("hz=");
+            if (i >= 0) snapshotHz = Integer.parseInt(msg.substring(i + 3).trim());
+            if (pingEnviadoNs != 0L) {
+                muestraRtt((System.nanoTime() - pingEnviadoNs) / 1e6f);
+                pingEnviadoNs = 0L;
+            }
+        } else if (msg.startsWith("SERVER_ERROR;code=FULL")) {
+            error("servidor lleno");
+        } else if (msg.equals("No_registrado")) {
+            // El servidor nos olvidó (timeout o reinicio), o no tiene cola: vuelvo a registrarme
+            estado = Estado.CONECTANDO;
+            ultimoIntentoNs = System.nanoTime() - REINTENTO_NS;
+        }
+    }
+
+    public void setListo(boolean v) throws IOException {
+        if (estado != Estado.LOBBY) return;
+        listo = v;
+        enviar(v ? "READY=1" : "READY=0");
+    }
+
+    /**
+     * Manda los saltos que la predicción todavía no vio confirmados, el más nuevo primero:
+     * INPUT;jump=1;seq=12;tick=340;ant=11@330,10@321. El servidor descarta los repetidos,
+     * así que se puede llamar de nuevo cada pocos ticks mientras haya pendientes.
+     */
+    public void enviarSaltos(PrediccionMate prediccion) throws IOException {
+        if (estado != Estado.EN_PARTIDA) return;
+        int n = prediccion.copiarPendientes(saltoSeqs, saltoTicks);
+        if (n == 0) return;
+
+        sb.setLength(0);
+        sb.append("INPUT;jump=1;seq=").append(saltoSeqs[0]).append(";tick=").append(saltoTicks[0]);
+        for (int k = 1; k < n; k++) {
+            sb.append(k == 1 ? ";ant=" : ",").append(saltoSeqs[k]).append('@').append(saltoTicks[k]);
+        }
+        enviar(sb.toString());
+    }
+
+    private void enviarQueue(long ahora) throws IOException {
+        colaEnviadoNs = ahora;
+        String q = "QUEUE;proto=bin;v=" + SnapshotFormat.VERSION;
+        enviar(rttMs < 0f ? q : q + ";rtt=" + Math.round(rttMs));
+    }
+
+    private void muestraRtt(float muestra) {
+        rttMs = rttMs < 0f ? muestra : rttMs * 0.8f + muestra * 0.2f;
+    }
+
+    // Número después de clave= hasta el próximo ';' (0 si no está)
+    private static long campo(String msg, String clave) {
+        int i = msg.indexOf(clave);
+        if (i < 0) return 0L;
+        int fin = msg.indexOf(';', i);
+        return Long.parseLong(msg.substring(i + clave.length(), fin < 0 ? msg.length() : fin).trim());
+    }
+
+    private void enviar(String msg) throws IOException {
+        if (servidor == null || canal == null) return;
+        canal.send(ByteBuffer.wrap(msg.getBytes(StandardCharsets.US_ASCII)), servidor);
+    }
+
+    private void error(String detalle) {
+        estado = Estado.ERROR;
+        detalleError = detalle;
+    }
+
+    /**
+     * Ticks que la predicción tiene que ir por delante del último snapshot: un RTT entero,
+     * porque el snapshot llega con RTT/2 de atraso y el salto tarda otro RTT/2 en llegar.
+     */
+    public int adelantoTicks() {
+        float rtt = rttMs < 0f ? 100f : rttMs;
+        return Math.round(rtt / (SnapshotFormat.TICK_DT * 1000f));
+    }
+
+    public Estado estado() { return estado; }
+    public String detalleError() { return detalleError; }
+    public int slot() { return slot; }
+    public boolean listo() { return listo; }
+    public boolean rivalListo() { return rivalListo; }
+    public int enSala() { return enSala; }
+    public int listosEnSala() { return listosEnSala; }
+    public long esperaColaMs() { return esperaColaMs; }
+    public int enCola() { return enCola; }
+    public float rttMs() { return rttMs; }
+    public int snapshotHz() { return snapshotHz; }
+}
@@ -0,0 +1,221 @@
+package com.badlogic.Flappy;
+
+/**
+ * Buffer de interpolación para lo que no se predice (termos y mate rival). Guarda los
+ * últimos snapshots con la hora local de llegada y dibuja el mundo un poco en el pasado
+ * ({@link Settings#interpDelaySnapshots} intervalos entre snapshots, ~2 ticks a 60 Hz): así
+ * casi siempre hay un snapshot de cada lado del instante a mostrar y el jitter o un paquete
+ * perdido no se notan. El intervalo se mide de lo que llega, porque el servidor puede
+ * bajar la tasa a 30 o 20 Hz si el enlace anda mal.
+ *
+ * <p>Si el buffer se queda sin snapshots nuevos se extrapola (termos a WORLD_SPEED, rival
+ * con su vy y gravedad) hasta {@link #EXTRAPOLACION_MAX} ticks, y después se congela.
+ * Cada frame que tuvo que extrapolar cuenta como underrun.
+ *
+ * <p>En salas grandes el servidor manda a menor tasa los mates lejanos ({@link Snapshot#tickDato}
+ * anterior al tick del snapshot). Esos no se interpolan entre valores repetidos: se
+ * extrapolan en balística desde su último dato, hasta {@link #EXTRAPOLACION_LEJANOS} ticks.
+ */
+public class InterpolacionSnapshots {
+    private static final int CAPACIDAD = 32; // potencia de 2
+    private static final int MASK = CAPACIDAD - 1;
+
+    public static final float EXTRAPOLACION_MAX = 10f;
+    public static final float EXTRAPOLACION_LEJANOS = 30f;
+
+    private static final long TICK_NS = 1_000_000_000L / SnapshotFormat.TICK_RATE;
+    // Si el reloj estimado se va más que esto del servidor, se re-sincroniza de golpe
+    private static final float RESYNC_TICKS = 10f;
+    // Cuánto del error de reloj se corrige con cada snapshot
+    private static final float AJUSTE_RELOJ = 0.1f;
+    // Huecos más grandes que esto entre snapshots son pérdidas, no la tasa
+    private static final int INTERVALO_MAX = 6;
+
+    private final Snapshot[] buffer = new Snapshot[CAPACIDAD];
+    private int cabeza;
+    private int cantidad;
+
+    // Reloj: tick del servidor estimado = baseTick + (ahora - baseNs) / TICK_NS
+    private double baseTick;
+    private long baseNs;
+
+    // Ticks entre snapshots recibidos (promedio móvil)
+    private float intervalo = 1f;
+
+    // Métricas
+    private long frames;
+    private long underruns;
+    private long tardios;
+    private float maxExtrapolacion;
+
+    public InterpolacionSnapshots() {
+        for (int i = 0; i < CAPACIDAD; i++) buffer[i] = new Snapshot();
+    }
+
+    public void clear() {
+        cabeza = 0;
+        cantidad = 0;
+        intervalo = 1f;
+    }
+
+    /** Guarda un snapshot recién llegado (ticks crecientes, como los da SnapshotReceiver). */
+    public void agregar(Snapshot s, long ahoraNs) {
+        if (cantidad > 0 && s.tick <= ultimo().tick) return;
+
+        if (cantidad == 0) {
+            baseTick = s.tick;
+            baseNs = ahoraNs;
+        } else {
+            int hueco = Math.min(s.tick - ultimo().tick, INTERVALO_MAX);
+            intervalo = intervalo * 0.9f + hueco * 0.1f;
+
+            double err = s.tick - tickServidor(ahoraNs);
+            if (Math.abs(err) > RESYNC_TICKS) {
+                baseTick = s.tick;
+                baseNs = ahoraNs;
+            } else {
+                baseTick += err * AJUSTE_RELOJ;
+            }
+        }
+
+        // Llegó para un instante que ya se dibujó
+        if (s.tick < tickRender(ahoraNs)) tardios++;
+
+        if (cantidad == CAPACIDAD) {
+            cabeza = (cabeza + 1) & MASK;
+            cantidad--;
+        }
+        buffer[(cabeza + cantidad) & MASK].set(s);
+        cantidad++;
+    }
+
+    public double tickServidor(long ahoraNs) {
+        return baseTick + (double) (ahoraNs - baseNs) / TICK_NS;
+    }
+
+    public double tickRender(long ahoraNs) {
+        return tickServidor(ahoraNs) - Settings.interpDelaySnapshots * intervalo;
+    }
+
+    /**
+     * Deja en out el estado interpolado para dibujar ahora (posiciones de jugadores y
+     * termos; alive y score del snapshot anterior al instante). false si no hay datos.
+     */
+    public boolean muestrear(long ahoraNs, Snapshot out) {
+        if (cantidad == 0) return false;
+        frames++;
+
+        double t = tickRender(ahoraNs);
+
+        // Descarto lo que ya quedó atrás, dejando siempre uno anterior a t
+        while (cantidad > 1 && buffer[(cabeza + 1) & MASK].tick <= t) {
+            cabeza = (cabeza + 1) & MASK;
+            cantidad--;
+        }
+
+        Snapshot a = buffer[cabeza];
+        if (cantidad == 1 || t < a.tick) {
+            // Sin snapshot posterior: extrapolo desde el último (o espero si t todavía no llegó a a)
+            float k = (float) Math.max(0.0, t - a.tick);
+            if (k > 0f) {
+                underruns++;
+                if (k > maxExtrapolacion) maxExtrapolacion = k;
+            }
+            extrapolar(a, Math.min(k, EXTRAPOLACION_MAX), out);
+            return true;
+        }
+
+        Snapshot b = buffer[(cabeza + 1) & MASK];
+        float alpha = (float) ((t - a.tick) / (b.tick - a.tick));
+        interpolar(a, b, alpha, out);
+        return true;
+    }
+
+    private static void interpolar(Snapshot a, Snapshot b, float alpha, Snapshot out) {
+        out.tick = a.tick;
+        copiarJugadores(a, out);
+        float t = a.tick + (b.tick - a.tick) * alpha;
+        for (int i = 0; i < a.playerCount && i < b.playerCount; i++) {
+            if (a.tickDato[i] == a.tick && b.tickDato[i] == b.tick) {
+                out.y[i] = a.y[i] + (b.y[i] - a.y[i]) * alpha;
+                out.vy[i] = a.vy[i] + (b.vy[i] - a.vy[i]) * alpha;
+            } else {
+                // Lejano: desde el dato más nuevo que ya corresponda a t
+                Snapshot src = b.tickDato[i] <= t ? b : a;
+                balistica(src, i, t - src.tickDato[i], out);
+            }
+        }
+
+        out.ensureTermos(a.termoCount);
+        out.termoCount = a.termoCount;
+        out.termoFirstId = a.termoFirstId;
+        float dx = Constants.WORLD_SPEED * SnapshotFormat.TICK_DT * (b.tick - a.tick) * alpha;
+        for (int i = 0; i < a.termoCount; i++) {
+            int j = a.termoFirstId + i - b.termoFirstId; // mismo termo en b
+            if (j >= 0 && j < b.termoCount) {
+                out.termoX[i] = a.termoX[i] + (b.termoX[j] - a.termoX[i]) * alpha;
+            } else {
+                out.termoX[i] = a.termoX[i] - dx;
+            }
+            out.termoGapY[i] = a.termoGapY[i];
+        }
+    }
+
+    private static void extrapolar(Snapshot a, float ticks, Snapshot out) {
+        out.tick = a.tick;
+        copiarJugadores(a, out);
+
+        for (int i = 0; i < a.playerCount; i++) {
+            balistica(a, i, ticks + (a.tick - a.tickDato[i]), out);
+        }
+
+        float dt = ticks * SnapshotFormat.TICK_DT;
+
+        out.ensureTermos(a.termoCount);
+        out.termoCount = a.termoCount;
+        out.termoFirstId = a.termoFirstId;
+        float dx = Constants.WORLD_SPEED * dt;
+        for (int i = 0; i < a.termoCount; i++) {
+            out.termoX[i] = a.termoX[i] - dx;
+            out.termoGapY[i] = a.termoGapY[i];
+        }
+    }
+
+    // Mate i de src, k ticks después de su dato (con tope), con su vy y gravedad
+    private static void balistica(Snapshot src, int i, float k, Snapshot out) {
+        if (!src.alive[i]) {
+            out.y[i] = src.y[i];
+            out.vy[i] = src.vy[i];
+            return;
+        }
+        float dt = Math.min(k, EXTRAPOLACION_LEJANOS) * SnapshotFormat.TICK_DT;
+        out.y[i] = src.y[i] + src.vy[i] * dt + 0.5f * Constants.GRAVITY * dt * dt;
+        out.vy[i] = src.vy[i] + Constants.GRAVITY * dt;
+    }
+
+    private static void copiarJugadores(Snapshot a, Snapshot out) {
+        out.ensurePlayers(a.playerCount);
+        out.playerCount = a.playerCount;
+        System.arraycopy(a.y, 0, out.y, 0, a.playerCount);
+        System.arraycopy(a.vy, 0, out.vy, 0, a.playerCount);
+        System.arraycopy(a.alive, 0, out.alive, 0, a.playerCount);
+        System.arraycopy(a.score, 0, out.score, 0, a.playerCount);
+        System.arraycopy(a.inputSeq, 0, out.inputSeq, 0, a.playerCount);
+        System.arraycopy(a.tickDato, 0, out.tickDato, 0, a.playerCount);
+    }
+
+    private Snapshot ultimo() {
+        return buffer[(cabeza + cantidad - 1) & MASK];
+    }
+
+    /** Snapshots en el buffer (incluido el anterior al instante que se dibuja). */
+    public int profundidad() { return cantidad; }
+    /** Ticks promedio entre snapshots (1 = 60 Hz). */
+    public float intervalo() { return intervalo; }
+    public long frames() { return frames; }
+    /** Frames que tuvieron que extrapolar por falta de snapshot posterior. */
+    public long underruns() { return underruns; }
+    /** Snapshots que llegaron para un instante que ya se había dibujado. */
+    public long tardios() { return tardios; }
+    public float maxExtrapolacion() { return maxExtrapolacion; }
+}
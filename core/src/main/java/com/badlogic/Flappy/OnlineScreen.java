@@ -3,13 +3,18 @@ package com.badlogic.Flappy;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Input;
 import com.badlogic.gdx.Screen;
+import com.badlogic.gdx.audio.Sound;
+import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.utils.viewport.FitViewport;
 import com.badlogic.gdx.utils.viewport.Viewport;
 
+import java.io.IOException;
+
 public class OnlineScreen implements Screen {
     private final Main game;
     private OrthographicCamera camera;
@@ -17,6 +22,28 @@ public class OnlineScreen implements Screen {
     private SpriteBatch batch;
     private BitmapFont font;
 
+    private Texture bg;
+    private Texture ground;
+    private Texture termoTexture;
+    private Texture mateTexture;
+    private Sound sfxJump;
+
+    private final ClienteRed red = new ClienteRed();
+    private final PrediccionMate prediccion = new PrediccionMate();
+    private ClienteRed.Estado estadoAnterior;
+
+    // Termos y rival se dibujan interpolados un poco en el pasado
+    private final InterpolacionSnapshots interpolacion = new InterpolacionSnapshots();
+    private final Snapshot render = new Snapshot();
+    private boolean hayEstado = false;
+
+    private float acumulador = 0f;
+    // Mientras haya saltos sin confirmar se reenvían cada tantos ticks
+    private static final int REENVIO_TICKS = 3;
+    private int ultimoEnvioTick;
+    private float groundX1 = 0;
+    private float groundX2;
+
     public OnlineScreen(Main game) {
         this.game = game;
     }
@@ -27,11 +54,89 @@ public class OnlineScreen implements Screen {
         batch = new SpriteBatch();
         font = new BitmapFont();
         font.getData().setScale(2f);
+
+        bg = new Texture("bg.png");
+        ground = new Texture("ground.png");
+        termoTexture = new Texture("termo.png");
+        mateTexture = new Texture("mate.png");
+        sfxJump = Gdx.audio.newSound(Gdx.files.internal("mate_sound.mp3"));
+
+        groundX1 = 0;
+        groundX2 = ground.getWidth();
+
+        try {
+            red.iniciar();
+        } catch (IOException e) {
+            Gdx.app.error("ONLINE", "No se pudo abrir el socket", e);
+        }
     }
 
-    @Override public void render(float delta) {
-        if (Gdx.input.isKeyJustPressed(Input.Keys.ESCAPE) || Gdx.input.justTouched()) {
+    private void update(float delta) throws IOException {
+        if (Gdx.input.isKeyJustPressed(Input.Keys.ESCAPE)) {
             game.setScreen(new MenuScreen(game));
+            return;
+        }
+
+        // Red: snapshots nuevos corrigen la predicción
+        Snapshot s;
+        while ((s = red.recibir()) != null) {
+            interpolacion.agregar(s, System.nanoTime());
+            hayEstado = true;
+            int idx = red.slot() - 1;
+            if (idx >= 0 && idx < s.playerCount) prediccion.reconciliar(s, idx, red.adelantoTicks());
+        }
+
+        ClienteRed.Estado estado = red.estado();
+        if (estado != estadoAnterior) {
+            if (estado == ClienteRed.Estado.EN_PARTIDA) {
+                prediccion.reset();
+                interpolacion.clear();
+                hayEstado = false;
+                acumulador = 0f;
+            }
+            estadoAnterior = estado;
+        }
+
+        boolean accion = Gdx.input.isKeyJustPressed(Input.Keys.SPACE) || Gdx.input.justTouched();
+
+        if (estado == ClienteRed.Estado.LOBBY && accion) {
+            red.setListo(!red.listo());
+        }
+
+        if (estado == ClienteRed.Estado.EN_PARTIDA) {
+            if (accion) {
+                int seq = prediccion.saltar();
+                if (seq > 0) {
+                    red.enviarSaltos(prediccion);
+                    ultimoEnvioTick = prediccion.tick();
+                    if (Settings.soundEnabled) sfxJump.play(0.8f);
+                }
+            }
+
+            // Predicción a paso fijo, igual que el servidor
+            acumulador = Math.min(acumulador + delta, 0.25f);
+            while (acumulador >= SnapshotFormat.TICK_DT) {
+                acumulador -= SnapshotFormat.TICK_DT;
+                prediccion.avanzar();
+            }
+            if (prediccion.pendientes() > 0 && prediccion.tick() - ultimoEnvioTick >= REENVIO_TICKS) {
+                red.enviarSaltos(prediccion);
+                ultimoEnvioTick = prediccion.tick();
+            }
+
+            float dx = Constants.WORLD_SPEED * delta;
+            groundX1 -= dx;
+            groundX2 -= dx;
+            if (groundX1 + ground.getWidth() < 0) groundX1 = groundX2 + ground.getWidth();
+            if (groundX2 + ground.getWidth() < 0) groundX2 = groundX1 + ground.getWidth();
+        }
+    }
+
+    @Override public void render(float delta) {
+        try {
+            update(delta);
+        } catch (IOException e) {
+            Gdx.app.error("ONLINE", "Error de red", e);
         }
 
         Gdx.gl.glClearColor(0,0,0,1);
@@ -39,15 +144,117 @@ public class OnlineScreen implements Screen {
 
         batch.setProjectionMatrix(camera.combined);
         batch.begin();
-        font.draw(batch, "ONLINE (LAN)", 150, 520);
-        font.draw(batch, "Proximamente...", 140, 480);
-        font.draw(batch, "ESC o click para volver", 90, 420);
+        batch.draw(bg, 0, 0, Constants.VIRTUAL_WIDTH, Constants.VIRTUAL_HEIGHT);
+
+        switch (red.estado()) {
+            case BUSCANDO:
+                font.draw(batch, "ONLINE (LAN)", 150, 520);
+                font.draw(batch, "Buscando servidor...", 110, 480);
+                break;
+            case CONECTANDO:
+                font.draw(batch, "Conectando...", 140, 480);
+                break;
+            case EN_COLA:
+                font.draw(batch, "Buscando rivales...", 110, 480);
+                font.draw(batch, "En cola " + red.esperaColaMs() / 1000 + "s (" + red.enCola() + ")", 120, 440);
+                break;
+            case LOBBY:
+                font.draw(batch, "Jugador " + red.slot(), 160, 560);
+                font.draw(batch, red.listo() ? "Listo!" : "SPACE / Tap: listo", 100, 500);
+                if (red.enSala() > 2) {
+                    font.draw(batch, "Listos " + red.listosEnSala() + "/" + red.enSala(), 130, 450);
+                } else {
+                    font.draw(batch, red.rivalListo() ? "Rival listo" : "Esperando rival...", 110, 450);
+                }
+                break;
+            case EN_PARTIDA:
+                drawPartida();
+                break;
+            case ERROR:
+                font.draw(batch, "Error: " + red.detalleError(), 40, 480);
+                break;
+        }
+
+        font.draw(batch, "ESC: volver", 20, 40);
         batch.end();
     }
 
+    private void drawPartida() {
+        int yo = red.slot() - 1;
+        if (hayEstado) hayEstado = interpolacion.muestrear(System.nanoTime(), render);
+
+        if (hayEstado) {
+            // Termos
+            float w = termoTexture.getWidth();
+            for (int i = 0; i < render.termoCount; i++) {
+                float x = render.termoX[i];
+                float bottomTopY = render.termoGapY[i] - Constants.TERMO_GAP / 2f;
+                float topBottomY = render.termoGapY[i] + Constants.TERMO_GAP / 2f;
+                float topH = Constants.VIRTUAL_HEIGHT - topBottomY;
+                batch.draw(termoTexture, x, Constants.GROUND_HEIGHT, w, bottomTopY - Constants.GROUND_HEIGHT);
+                batch.draw(termoTexture, x, topBottomY + topH, w, -topH);
+            }
+        }
+
+        batch.draw(ground, groundX1, 0);
+        batch.draw(ground, groundX2, 0);
+
+        if (!hayEstado) {
+            font.draw(batch, "Esperando estado...", 110, 480);
+            return;
+        }
+
+        // Rivales vivos (interpolados) semitransparentes, atrás
+        for (int i = 0; i < render.playerCount; i++) {
+            if (i == yo || !render.alive[i]) continue;
+            batch.setColor(1f, 1f, 1f, 0.5f);
+            batch.draw(mateTexture, mateX(i), render.y[i]);
+            batch.setColor(Color.WHITE);
+        }
+
+        // Mate propio: predicho
+        if (yo >= 0 && prediccion.iniciada()) {
+            batch.draw(mateTexture, mateX(yo), prediccion.yRender());
+        }
+
+        // HUD
+        font.draw(batch, "Vos: " + render.score[Math.max(yo, 0)], 20, Constants.VIRTUAL_HEIGHT - 20);
+        if (render.playerCount == 2) {
+            font.draw(batch, "Rival: " + render.score[yo == 0 ? 1 : 0], 20, Constants.VIRTUAL_HEIGHT - 60);
+        } else {
+            int vivos = 0;
+            for (int i = 0; i < render.playerCount; i++) {
+                if (render.alive[i]) vivos++;
+            }
+            font.draw(batch, "Vivos: " + vivos + "/" + render.playerCount, 20, Constants.VIRTUAL_HEIGHT - 60);
+        }
+        font.draw(batch, "RTT " + Math.round(red.rttMs()) + " ms", 300, Constants.VIRTUAL_HEIGHT - 20);
+        font.draw(batch, red.snapshotHz() + " Hz", 380, Constants.VIRTUAL_HEIGHT - 100);
+        font.draw(batch, "underruns " + interpolacion.underruns(), 260, Constants.VIRTUAL_HEIGHT - 60);
+
+        if (!prediccion.isAlive()) {
+            font.draw(batch, "PERDISTE", 160, 450);
+        }
+    }
+
+    // Misma x que el servidor: la columna del jugador (idx es id - 1)
+    private static float mateX(int idx) {
+        return TermoLayout.columnaX(TermoLayout.columna(idx + 1));
+    }
+
     @Override public void resize(int width, int height) { viewport.update(width, height, true); }
     @Override public void pause() {}
     @Override public void resume() {}
-    @Override public void hide() {}
-    @Override public void dispose() { batch.dispose(); font.dispose(); }
+    @Override public void hide() { red.cerrar(); }
+
+    @Override public void dispose() {
+        red.cerrar();
+        batch.dispose();
+        font.dispose();
+        if (bg != null) bg.dispose();
+        if (ground != null) ground.dispose();
+        if (termoTexture != null) termoTexture.dispose();
+        if (mateTexture != null) mateTexture.dispose();
+        if (sfxJump != null) sfxJump.dispose();
+    }
 }
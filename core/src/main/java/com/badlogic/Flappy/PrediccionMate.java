@@ -0,0 +1,172 @@
+package com.badlogic.Flappy;
+
+/**
+ * Predicción del mate propio en el modo online. Corre la misma física que red.GameSim a
+ * paso fijo ({@link SnapshotFormat#TICK_DT}) adelantada al servidor, así el salto se ve
+ * en el momento en que se aprieta y no un RTT después.
+ *
+ * <p>Cada salto lleva un seq y se guarda hasta que un snapshot lo confirma
+ * ({@link Snapshot#inputSeq}). Al llegar un snapshot se parte del estado del servidor en
+ * ese tick, se descartan los saltos confirmados y se re-simulan los pendientes hasta el
+ * tick predicho. La diferencia con lo que se venía mostrando no se aplica de golpe: queda
+ * como un offset visual que se absorbe en unos pocos ticks.
+ *
+ * <p>El servidor sigue siendo la autoridad: la muerte solo la decide él.
+ */
+public class PrediccionMate {
+    private static final int MAX_PENDIENTES = 64; // potencia de 2
+    private static final int MASK = MAX_PENDIENTES - 1;
+
+    // Fracción del error visual que queda después de cada tick
+    private static final float SUAVIZADO = 0.8f;
+    // Más que esto no se suaviza: se corrige de una
+    private static final float ERROR_MAX = 60f;
+    // Desfasaje tolerado entre el tick predicho y el ideal antes de re-sincronizar
+    private static final int DERIVA_MAX = 2;
+
+    // Saltos sin confirmar: seq y tick predicho en el que se aplicaron
+    private final int[] seqs = new int[MAX_PENDIENTES];
+    private final int[] ticks = new int[MAX_PENDIENTES];
+    private int cabeza;
+    private int pendientes;
+
+    private boolean iniciada;
+    private int tick;       // tick predicho (misma línea de tiempo que Snapshot.tick)
+    private float y;
+    private float vy;
+    private boolean alive = true;
+    private int proximoSeq = 1;
+    private float errorY;
+
+    // Métricas
+    private int reconciliaciones;
+    private float ultimaCorreccion;
+
+    public void reset() {
+        iniciada = false;
+        cabeza = 0;
+        pendientes = 0;
+        alive = true;
+        proximoSeq = 1;
+        errorY = 0f;
+        reconciliaciones = 0;
+        ultimaCorreccion = 0f;
+    }
+
+    public boolean iniciada() {
+        return iniciada;
+    }
+
+    /**
+     * Registra un salto para el próximo paso y devuelve su seq (va en INPUT;seq=), o -1 si
+     * no corresponde saltar (sin estado todavía, mate muerto o ya hay uno en ese paso: el
+     * servidor aplica uno por tick).
+     */
+    public int saltar() {
+        if (!iniciada || !alive) return -1;
+        if (pendientes > 0 && ticks[(cabeza + pendientes - 1) & MASK] == tick + 1) return -1;
+        if (pendientes == MAX_PENDIENTES) {
+            // Sin confirmaciones hace rato: el más viejo ya no va a servir para reconciliar
+            cabeza = (cabeza + 1) & MASK;
+            pendientes--;
+        }
+        int i = (cabeza + pendientes) & MASK;
+        seqs[i] = proximoSeq;
+        ticks[i] = tick + 1;
+        pendientes++;
+        return proximoSeq++;
+    }
+
+    /** Un paso fijo de la predicción. */
+    public void avanzar() {
+        if (!iniciada) return;
+        tick++;
+        if (alive) paso(saltaEn(tick));
+        errorY *= SUAVIZADO;
+        if (Math.abs(errorY) < 0.01f) errorY = 0f;
+    }
+
+    /**
+     * Corrige la predicción con el estado del servidor. adelanto: ticks que el cliente va
+     * por delante del último snapshot (ver ClienteRed#adelantoTicks).
+     */
+    public void reconciliar(Snapshot s, int idx, int adelanto) {
+        float yAntes = y + errorY;
+
+        // Descarto lo que el servidor ya aplicó
+        int ack = s.inputSeq[idx];
+        while (pendientes > 0 && seqs[cabeza] <= ack) {
+            cabeza = (cabeza + 1) & MASK;
+            pendientes--;
+        }
+
+        int ideal = s.tick + adelanto;
+        if (!iniciada || Math.abs(tick - ideal) > DERIVA_MAX) {
+            // Primera vez, o el reloj local se desfasó del servidor: re-sincronizo
+            tick = ideal;
+            iniciada = true;
+        }
+
+        y = s.y[idx];
+        vy = s.vy[idx];
+        alive = s.alive[idx];
+
+        // Re-simulo desde el tick del snapshot hasta el predicho con los saltos pendientes.
+        // Los que se predijeron antes de s.tick y el servidor todavía no aplicó van en el primer paso.
+        if (alive) {
+            for (int t = s.tick + 1; t <= tick; t++) {
+                paso(saltaEn(t) || (t == s.tick + 1 && saltoAtrasado(s.tick)));
+            }
+        }
+
+        float correccion = yAntes - y;
+        ultimaCorreccion = correccion;
+        reconciliaciones++;
+        errorY = Math.abs(correccion) > ERROR_MAX || !alive ? 0f : correccion;
+    }
+
+    private void paso(boolean saltar) {
+        if (saltar) vy = Constants.JUMP_VELOCITY;
+        vy += Constants.GRAVITY * SnapshotFormat.TICK_DT;
+        y += vy * SnapshotFormat.TICK_DT;
+    }
+
+    private boolean saltaEn(int t) {
+        for (int k = 0; k < pendientes; k++) {
+            if (ticks[(cabeza + k) & MASK] == t) return true;
+        }
+        return false;
+    }
+
+    private boolean saltoAtrasado(int t) {
+        for (int k = 0; k < pendientes; k++) {
+            if (ticks[(cabeza + k) & MASK] <= t) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Copia los saltos sin confirmar, del más nuevo al más viejo, hasta llenar los arrays.
+     * Devuelve cuántos copió.
+     */
+    public int copiarPendientes(int[] seqsOut, int[] ticksOut) {
+        int n = Math.min(pendientes, Math.min(seqsOut.length, ticksOut.length));
+        for (int k = 0; k < n; k++) {
+            int i = (cabeza + pendientes - 1 - k) & MASK;
+            seqsOut[k] = seqs[i];
+            ticksOut[k] = ticks[i];
+        }
+        return n;
+    }
+
+    public int tick() { return tick; }
+    public boolean isAlive() { return alive; }
+    public int pendientes() { return pendientes; }
+    public int reconciliaciones() { return reconciliaciones; }
+    public float ultimaCorreccion() { return ultimaCorreccion; }
+
+    /** Y para dibujar: la predicción más lo que queda del error suavizado. */
+    public float yRender() {
+        return y + errorY;
+    }
+}
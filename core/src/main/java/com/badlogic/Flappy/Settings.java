@@ -3,4 +3,11 @@ package com.badlogic.Flappy;
 public class Settings {
     public static boolean musicEnabled = true;
     public static boolean soundEnabled = true;
+
+    // Online: cuántos intervalos entre snapshots en el pasado se dibujan termos y rival
+    // (ver InterpolacionSnapshots). A 60 Hz son ticks; si el servidor baja la tasa, crece.
+    public static float interpDelaySnapshots = 2f;
+
+    // Online: entrar por la cola de matchmaking del servidor en vez del primer lobby con lugar
+    public static boolean matchmaking = true;
 }
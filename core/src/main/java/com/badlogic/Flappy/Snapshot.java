@@ -0,0 +1,59 @@
+package com.badlogic.Flappy;
+
+/** Estado decodificado de un snapshot del servidor. Se reusa entre paquetes. */
+public class Snapshot {
+    public int tick;
+
+    public int playerCount;
+    public float[] y = new float[2];
+    public float[] vy = new float[2];
+    public boolean[] alive = new boolean[2];
+    public int[] score = new int[2];
+    // seq del último INPUT de ese jugador que aplicó el servidor
+    public int[] inputSeq = new int[2];
+    // Tick al que corresponden y/vy de ese jugador: tick, o uno anterior si el servidor no
+    // lo mandó por estar lejos (se extrapola desde ahí)
+    public int[] tickDato = new int[2];
+
+    public int termoCount;
+    public int termoFirstId;
+    public float[] termoX = new float[8];
+    public float[] termoGapY = new float[8];
+
+    public void set(Snapshot o) {
+        tick = o.tick;
+        ensurePlayers(o.playerCount);
+        playerCount = o.playerCount;
+        System.arraycopy(o.y, 0, y, 0, o.playerCount);
+        System.arraycopy(o.vy, 0, vy, 0, o.playerCount);
+        System.arraycopy(o.alive, 0, alive, 0, o.playerCount);
+        System.arraycopy(o.score, 0, score, 0, o.playerCount);
+        System.arraycopy(o.inputSeq, 0, inputSeq, 0, o.playerCount);
+        System.arraycopy(o.tickDato, 0, tickDato, 0, o.playerCount);
+        ensureTermos(o.termoCount);
+        termoCount = o.termoCount;
+        termoFirstId = o.termoFirstId;
+        System.arraycopy(o.termoX, 0, termoX, 0, o.termoCount);
+        System.arraycopy(o.termoGapY, 0, termoGapY, 0, o.termoCount);
+    }
+
+    void ensurePlayers(int n) {
+        if (y.length >= n) return;
+        y = new float[n];
+        vy = new float[n];
+        alive = new boolean[n];
+        score = new int[n];
+        inputSeq = new int[n];
+        tickDato = new int[n];
+    }
+
+    void ensureTermos(int n) {
+        if (termoX.length >= n) return;
+        float[] nx = new float[Math.max(n, termoX.length * 2)];
+        float[] ng = new float[nx.length];
+        System.arraycopy(termoX, 0, nx, 0, termoCount);
+        System.arraycopy(termoGapY, 0, ng, 0, termoCount);
+        termoX = nx;
+        termoGapY = ng;
+    }
+}
@@ -0,0 +1,171 @@
+package com.badlogic.Flappy;
+
+/** Decodifica los snapshots binarios del servidor (ver {@link SnapshotFormat}). */
+public final class SnapshotDecoder {
+
+    private SnapshotDecoder() {}
+
+    public static boolean isSnapshot(byte[] data, int len) {
+        return len >= SnapshotFormat.HEADER_BYTES && data[0] == SnapshotFormat.MAGIC;
+    }
+
+    public static byte type(byte[] data) {
+        return data[2];
+    }
+
+    public static int tick(byte[] data) {
+        return readInt(data, 3);
+    }
+
+    /** Tick de la base de un delta. */
+    public static int baseTick(byte[] data, int len) {
+        if (len < SnapshotFormat.HEADER_BYTES + 1) return -1;
+        return tick(data) - (data[SnapshotFormat.HEADER_BYTES] & 0xFF);
+    }
+
+    /**
+     * Devuelve false si el paquete no es un snapshot completo válido de esta versión.
+     * seed: el de la partida, para generar los termos.
+     */
+    public static boolean decode(byte[] data, int len, long seed, Snapshot out) {
+        if (!isSnapshot(data, len)) return false;
+        if (data[1] != SnapshotFormat.VERSION) return false;
+        if (data[2] != SnapshotFormat.TYPE_FULL) return false;
+
+        int p = 3;
+        out.tick = readInt(data, p);
+        p += 4;
+
+        if (p + 1 > len) return false;
+        int players = data[p++] & 0xFF;
+        if (p + players * SnapshotFormat.PLAYER_BYTES + 5 > len) return false;
+
+        out.ensurePlayers(players);
+        out.playerCount = players;
+        for (int i = 0; i < players; i++) {
+            out.y[i] = SnapshotFormat.dequantize(readShort(data, p));
+            out.vy[i] = SnapshotFormat.dequantize(readShort(data, p + 2));
+            out.alive[i] = (data[p + 4] & SnapshotFormat.FLAG_ALIVE) != 0;
+            out.score[i] = readShort(data, p + 5) & 0xFFFF;
+            out.inputSeq[i] = readInt(data, p + 7);
+            out.tickDato[i] = out.tick;
+            p += SnapshotFormat.PLAYER_BYTES;
+        }
+
+        int termos = data[p++] & 0xFF;
+        out.termoFirstId = readInt(data, p);
+
+        out.termoCount = 0;
+        out.ensureTermos(termos);
+        out.termoCount = termos;
+        for (int i = 0; i < termos; i++) {
+            out.termoX[i] = TermoLayout.x(out.termoFirstId + i, out.tick);
+            out.termoGapY[i] = TermoLayout.gapCenterY(seed, out.termoFirstId + i);
+        }
+        return true;
+    }
+
+    /**
+     * Aplica un delta sobre base (el snapshot de baseTick) y deja el resultado en out.
+     * Devuelve false si el paquete no es un delta válido o base no es su baseline.
+     */
+    public static boolean decodeDelta(byte[] data, int len, Snapshot base, long seed, Snapshot out) {
+        if (!isSnapshot(data, len)) return false;
+        if (data[1] != SnapshotFormat.VERSION) return false;
+        if (data[2] != SnapshotFormat.TYPE_DELTA) return false;
+        if (base.tick != baseTick(data, len)) return false;
+
+        int p = 3;
+        int tick = readInt(data, p);
+        p += 5;
+
+        if (p + 1 > len) return false;
+        int players = data[p++] & 0xFF;
+        if (players != base.playerCount) return false;
+
+        int bits = (players + 7) / 8;
+        if (p + 2 * bits > len) return false;
+        int entradas = p;
+        int viejos = p + bits;
+        p += 2 * bits;
+
+        out.tick = tick;
+        out.ensurePlayers(players);
+        out.playerCount = players;
+        for (int i = 0; i < players; i++) {
+            boolean viejo = (data[viejos + i / 8] & (1 << (i % 8))) != 0;
+            out.tickDato[i] = viejo ? base.tickDato[i] : tick;
+
+            int mask = 0;
+            if ((data[entradas + i / 8] & (1 << (i % 8))) != 0) {
+                if (p + 1 > len) return false;
+                mask = data[p++];
+            }
+
+            float y = base.y[i];
+            float vy = base.vy[i];
+            boolean alive = base.alive[i];
+            int score = base.score[i];
+            int seq = base.inputSeq[i];
+
+            if ((mask & SnapshotFormat.DELTA_POS) != 0) {
+                if (p + 4 > len) return false;
+                y = SnapshotFormat.dequantize(readShort(data, p));
+                vy = SnapshotFormat.dequantize(readShort(data, p + 2));
+                p += 4;
+            }
+            if ((mask & SnapshotFormat.DELTA_FLAGS) != 0) {
+                if (p + 1 > len) return false;
+                alive = (data[p++] & SnapshotFormat.FLAG_ALIVE) != 0;
+            }
+            if ((mask & SnapshotFormat.DELTA_SCORE) != 0) {
+                if (p + 2 > len) return false;
+                score = readShort(data, p) & 0xFFFF;
+                p += 2;
+            }
+            if ((mask & SnapshotFormat.DELTA_SEQ) != 0) {
+                if (p + 4 > len) return false;
+                seq = readInt(data, p);
+                p += 4;
+            }
+
+            out.y[i] = y;
+            out.vy[i] = vy;
+            out.alive[i] = alive;
+            out.score[i] = score;
+            out.inputSeq[i] = seq;
+        }
+
+        if (p + 2 > len) return false;
+        int despawned = data[p++] & 0xFF;
+        int spawned = data[p++] & 0xFF;
+        if (despawned > base.termoCount) return false;
+
+        // Los que siguen desde la base conservan el hueco; la x sale de (id, tick)
+        int kept = base.termoCount - despawned;
+        int firstId = base.termoFirstId + despawned;
+
+        out.termoCount = 0;
+        out.ensureTermos(kept + spawned);
+        for (int i = 0; i < kept; i++) {
+            out.termoGapY[i] = base.termoGapY[despawned + i];
+        }
+        for (int i = kept; i < kept + spawned; i++) {
+            out.termoGapY[i] = TermoLayout.gapCenterY(seed, firstId + i);
+        }
+        for (int i = 0; i < kept + spawned; i++) {
+            out.termoX[i] = TermoLayout.x(firstId + i, tick);
+        }
+        out.termoCount = kept + spawned;
+        out.termoFirstId = firstId;
+        return true;
+    }
+
+    private static short readShort(byte[] d, int p) {
+        return (short) (((d[p] & 0xFF) << 8) | (d[p + 1] & 0xFF));
+    }
+
+    private static int readInt(byte[] d, int p) {
+        return ((d[p] & 0xFF) << 24) | ((d[p + 1] & 0xFF) << 16) | ((d[p + 2] & 0xFF) << 8) | (d[p + 3] & 0xFF);
+    }
+}
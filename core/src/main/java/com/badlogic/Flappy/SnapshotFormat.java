@@ -0,0 +1,85 @@
+package com.badlogic.Flappy;
+
+/**
+ * Formato binario de los snapshots que manda el servidor (ver red.GameSim#writeState
+ * y red.HistorialSnapshots#writeDelta). Big-endian. Posiciones y velocidades en punto
+ * fijo con {@link #POS_SCALE} pasos por pixel.
+ *
+ * <pre>
+ * byte  MAGIC (0xF5, nunca es el primer byte de un mensaje de texto)
+ * byte  VERSION
+ * byte  tipo
+ * int   tick
+ *
+ * TYPE_FULL:
+ *   byte  cantidad de jugadores, y por cada uno:
+ *           short y, short vy, byte flags (FLAG_ALIVE), short score,
+ *           int seq del último INPUT que el servidor aplicó (para reconciliar la predicción)
+ *   byte  cantidad de termos
+ *   int   id del primer termo (los siguientes son correlativos)
+ *
+ * TYPE_DELTA (contra el snapshot de tick - baseOffset, que el cliente confirmó con ACK):
+ *   byte  baseOffset
+ *   byte  cantidad de jugadores
+ *   bits  entradas: (cantidad + 7) / 8 bytes, bit i%8 del byte i/8 = el jugador i trae entrada
+ *   bits  viejos: igual; el jugador i no se actualizó en este tick (no estaba entre los que
+ *           le importan al cliente) y queda con lo de la base, que es de un tick anterior
+ *           ({@link Snapshot#tickDato}). Sin entrada ni viejo = igual que en la base.
+ *   por cada jugador con entrada, en orden:
+ *           byte mask, y solo lo que cambió:
+ *           DELTA_POS: short y, short vy / DELTA_FLAGS: byte flags / DELTA_SCORE: short score
+ *           DELTA_SEQ: int seq (solo el jugador propio)
+ *   byte  termos que salieron por la cabeza
+ *   byte  termos nuevos (ids siguientes al último de la base)
+ * </pre>
+ *
+ * De los termos solo viajan los ids: el cliente los genera con {@link TermoLayout}, igual
+ * que el servidor, con el seed de {@code PARTIDA_INICIADA;seed=N}. La x sale de
+ * {@link TermoLayout#x(int, int)} con el tick del snapshot (crece ~10 px por id, así que en
+ * un short a 1/{@link #POS_SCALE} px se saturaba a los ~7 minutos de partida) y el hueco de
+ * {@link TermoLayout#gapCenterY(long, int)}.
+ *
+ * Para pedirlo, el cliente se registra con {@link #CONNECT_BINARY} en vez de "Conectar"
+ * y confirma cada snapshot aplicado con {@link #ACK_PREFIX}tick. Si el servidor no lo
+ * soporta responde "No_registrado" y el cliente vuelve a texto.
+ */
+public final class SnapshotFormat {
+    public static final byte MAGIC = (byte) 0xF5;
+    public static final byte VERSION = 6;
+
+    public static final byte TYPE_FULL = 1;
+    public static final byte TYPE_DELTA = 2;
+
+    public static final byte FLAG_ALIVE = 1;
+
+    public static final int DELTA_POS = 1;
+    public static final int DELTA_FLAGS = 2;
+    public static final int DELTA_SCORE = 4;
+    public static final int DELTA_SEQ = 8;
+
+    public static final float POS_SCALE = 8f;
+
+    // Paso fijo del servidor
+    public static final int TICK_RATE = 60;
+    public static final float TICK_DT = 1f / TICK_RATE;
+
+    public static final int HEADER_BYTES = 3 + 4;
+    public static final int PLAYER_BYTES = 2 + 2 + 1 + 2 + 4;
+
+    public static final String CONNECT_BINARY = "Conectar;proto=bin;v=" + VERSION;
+    public static final String CONNECTED_BINARY = "Conectado;proto=bin";
+    public static final String ACK_PREFIX = "ACK;tick=";
+
+    private SnapshotFormat() {}
+
+    public static short quantize(float v) {
+        int q = Math.round(v * POS_SCALE);
+        if (q > Short.MAX_VALUE) return Short.MAX_VALUE;
+        if (q < Short.MIN_VALUE) return Short.MIN_VALUE;
+        return (short) q;
+    }
+
+    public static float dequantize(short q) {
+        return q / POS_SCALE;
+    }
+}
@@ -0,0 +1,63 @@
+package com.badlogic.Flappy;
+
+/**
+ * Lado cliente del protocolo delta: guarda los últimos snapshots por tick para
+ * poder aplicar los deltas del servidor sobre la base que corresponde.
+ * Después de cada {@link #receive} que devuelva un snapshot, hay que mandar
+ * {@link SnapshotFormat#ACK_PREFIX} + {@link #lastTick()} al servidor.
+ */
+public class SnapshotReceiver {
+    private static final int HISTORY = 64;
+    private static final int MASK = HISTORY - 1;
+
+    private final Snapshot[] history = new Snapshot[HISTORY];
+    private final Snapshot scratch = new Snapshot();
+    private int lastTick = -1;
+    private long seed;
+
+    public SnapshotReceiver() {
+        for (int i = 0; i < HISTORY; i++) history[i] = new Snapshot();
+        reset(0L);
+    }
+
+    /**
+     * Llamar al empezar cada partida (el servidor reinicia los ticks) con el seed de
+     * PARTIDA_INICIADA, del que salen los termos.
+     */
+    public void reset(long seed) {
+        for (Snapshot s : history) s.tick = -1;
+        lastTick = -1;
+        this.seed = seed;
+    }
+
+    /**
+     * Decodifica un paquete y devuelve el snapshot resultante, o null si no se pudo
+     * (paquete inválido, viejo o delta contra una base que ya no tenemos).
+     */
+    public Snapshot receive(byte[] data, int len) {
+        if (!SnapshotDecoder.isSnapshot(data, len)) return null;
+
+        int tick = SnapshotDecoder.tick(data);
+        if (tick <= lastTick) return null; // duplicado o fuera de orden
+
+        boolean ok;
+        if (SnapshotDecoder.type(data) == SnapshotFormat.TYPE_DELTA) {
+            int baseTick = SnapshotDecoder.baseTick(data, len);
+            Snapshot base = baseTick >= 0 ? history[baseTick & MASK] : null;
+            if (base == null || base.tick != baseTick) return null;
+            ok = SnapshotDecoder.decodeDelta(data, len, base, seed, scratch);
+        } else {
+            ok = SnapshotDecoder.decode(data, len, seed, scratch);
+        }
+        if (!ok) return null;
+
+        Snapshot slot = history[tick & MASK];
+        slot.set(scratch);
+        lastTick = tick;
+        return slot;
+    }
+
+    public int lastTick() {
+        return lastTick;
+    }
+}
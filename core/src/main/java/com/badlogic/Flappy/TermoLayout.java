@@ -0,0 +1,70 @@
+package com.badlogic.Flappy;
+
+/**
+ * Layout determinístico de los termos de una partida online. El servidor (red.GameSim)
+ * y el cliente lo calculan con las mismas cuentas a partir del seed que llega en
+ * {@code PARTIDA_INICIADA;seed=N}: los snapshots solo traen los ids de los termos y el
+ * cliente genera cada uno localmente (ver SnapshotDecoder).
+ *
+ * <ul>
+ *   <li>Al arrancar hay {@link #INITIAL_TERMOS}; después spawnea uno cada
+ *       {@link #SPAWN_TICKS} ticks (ver {@link #spawnTick(int)}).</li>
+ *   <li>Todos avanzan a WORLD_SPEED, así que la x del termo id en el tick t es lineal en
+ *       id y t ({@link #x(int, int)}) y no acumula error de float.</li>
+ *   <li>El hueco de cada id sale de un hash del seed ({@link #gapCenterY(long, int)}): se
+ *       puede calcular cualquier id sin recorrer los anteriores.</li>
+ *   <li>Los mates vuelan en {@link #COLUMNAS} columnas de x fija ({@link #columnaX(int)});
+ *       el jugador id va a la {@link #columna(int)}.</li>
+ * </ul>
+ */
+public final class TermoLayout {
+    public static final int INITIAL_TERMOS = 2;
+    public static final int SPAWN_TICKS = Math.round(Constants.TERMO_SPAWN_TIME * SnapshotFormat.TICK_RATE);
+
+    public static final float START_X = Constants.VIRTUAL_WIDTH + 40f;
+    public static final float SPACING = 250f;
+
+    // Con 2 jugadores queda P1 en 120 y P2 en 160, como siempre
+    public static final int COLUMNAS = 2;
+    private static final float COLUMNA_X0 = 120f;
+    private static final float COLUMNA_SEPARACION = 40f; // o 60f si quiere más separación
+
+    private static final float MARGIN = 10f;
+    private static final float MIN_CENTER = Constants.GROUND_HEIGHT + Constants.TERMO_GAP / 2f + MARGIN;
+    private static final float MAX_CENTER = Constants.VIRTUAL_HEIGHT - Constants.TERMO_GAP / 2f - MARGIN;
+
+    private TermoLayout() {}
+
+    /** Tick (contado desde el inicio de la partida) en el que aparece el termo id. */
+    public static int spawnTick(int id) {
+        return id < INITIAL_TERMOS ? 0 : (id - INITIAL_TERMOS + 1) * SPAWN_TICKS;
+    }
+
+    /** X del termo id luego de tick pasos de simulación. */
+    public static float x(int id, int tick) {
+        return (float) (START_X + (double) SPACING * id - (double) Constants.WORLD_SPEED * tick / SnapshotFormat.TICK_RATE);
+    }
+
+    /** X fija de los mates de la columna c (0 .. COLUMNAS - 1). */
+    public static float columnaX(int c) {
+        return COLUMNA_X0 + COLUMNA_SEPARACION * c;
+    }
+
+    /** Columna del jugador id (desde 1). */
+    public static int columna(int id) {
+        return (id - 1) % COLUMNAS;
+    }
+
+    public static float gapCenterY(long seed, int id) {
+        long h = mix(seed + (id + 1) * 0x9E3779B97F4A7C15L);
+        float f = (h >>> 40) * 0x1.0p-24f; // [0, 1)
+        return MIN_CENTER + f * (MAX_CENTER - MIN_CENTER);
+    }
+
+    // Finalizador de SplitMix64
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
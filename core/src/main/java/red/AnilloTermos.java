@@ -0,0 +1,83 @@
+package red;
+
+// Termos de una partida en arrays primitivos manejados como buffer circular.
+// Siempre spawnean por la cola (x creciente) y salen por la cabeza, así que el orden
+// por x se mantiene solo y no hay corrimientos ni objetos por termo.
+// Los ids son correlativos: el termo i (0 = cabeza) tiene id primerId + i.
+final class AnilloTermos {
+
+    private static final int CAPACIDAD_INICIAL = 16; // potencia de 2
+
+    float[] x = new float[CAPACIDAD_INICIAL];
+    float[] gapY = new float[CAPACIDAD_INICIAL];
+    // Bitset por termo: bit (id - 1) prendido = ese jugador ya lo pasó y sumó el punto
+    // (hasta 64 jugadores, Sala.MAX_JUGADORES)
+    long[] pasados = new long[CAPACIDAD_INICIAL];
+
+    int mask = CAPACIDAD_INICIAL - 1;
+    int cabeza;
+    int cantidad;
+    int primerId;
+
+    void limpiar() {
+        cabeza = 0;
+        cantidad = 0;
+        primerId = 0;
+    }
+
+    // Índice físico en los arrays del termo i-ésimo (0 = el de más a la izquierda)
+    int slot(int i) {
+        return (cabeza + i) & mask;
+    }
+
+    int proximoId() {
+        return primerId + cantidad;
+    }
+
+    // Primer termo (orden lógico) con x > xMin, o cantidad si no hay. Búsqueda binaria
+    // sobre el anillo, que siempre está ordenado por x.
+    int primeroDespuesDe(float xMin) {
+        int lo = 0;
+        int hi = cantidad;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (x[slot(mid)] > xMin) hi = mid; else lo = mid + 1;
+        }
+        return lo;
+    }
+
+    void agregar(float tx, float gap) {
+        if (cantidad == x.length) crecer();
+        int s = slot(cantidad);
+        x[s] = tx;
+        gapY[s] = gap;
+        pasados[s] = 0;
+        cantidad++;
+    }
+
+    void quitarPrimero() {
+        cabeza = (cabeza + 1) & mask;
+        cantidad--;
+        primerId++;
+    }
+
+    // Solo si se llena (partidas muy largas acumulan termos fuera de pantalla).
+    // Desenrolla el anillo para que la cabeza quede en 0.
+    private void crecer() {
+        int cap = x.length * 2;
+        float[] nx = new float[cap];
+        float[] ng = new float[cap];
+        long[] np = new long[cap];
+        for (int i = 0; i < cantidad; i++) {
+            int s = slot(i);
+            nx[i] = x[s];
+            ng[i] = gapY[s];
+            np[i] = pasados[s];
+        }
+        x = nx;
+        gapY = ng;
+        pasados = np;
+        mask = cap - 1;
+        cabeza = 0;
+    }
+}
@@ -0,0 +1,103 @@
+package red;
+
+// Saltos pendientes de un jugador, ordenados por seq. Cada INPUT trae el salto nuevo y los
+// últimos que el cliente todavía no vio confirmados, así que el mismo seq llega varias
+// veces: se guarda una sola y se descarta lo que ya se aplicó. Cada salto trae el tick
+// (de snapshot) en que el cliente lo predijo y se aplica en ese paso, o en el próximo si
+// llegó tarde; nunca más de uno por paso, así dos saltos seguidos no se pisan.
+//
+// Lo usa solo el worker de la sala: los saltos le llegan del receptor por BuzonEntradas.
+final class BufferEntradas {
+
+    private static final int CAPACIDAD = 32; // potencia de 2
+    private static final int MASK = CAPACIDAD - 1;
+
+    // Un tick pedido más allá de esto (reloj del cliente roto o trampa) se recorta
+    static final int ADELANTO_MAX = 20;
+
+    private final int[] seqs = new int[CAPACIDAD];
+    private final int[] ticks = new int[CAPACIDAD];
+    private int cabeza;
+    private int cantidad;
+
+    private int seqAplicado;
+    private int tickTomado;
+
+    // Métricas de la partida
+    private int aplicadas;
+    private int duplicadas;
+    private int tardias;
+    private int rebobinadas;
+    private int desbordadas; // no entraban: CAPACIDAD saltos pendientes sin aplicar
+
+    void limpiar() {
+        cabeza = 0;
+        cantidad = 0;
+        seqAplicado = 0;
+        aplicadas = 0;
+        duplicadas = 0;
+        tardias = 0;
+        rebobinadas = 0;
+        desbordadas = 0;
+    }
+
+    // tickActual = GameSim#tickCount() al recibir. false si era repetida o no entraba.
+    boolean agregar(int seq, int tick, int tickActual) {
+        if (seq <= seqAplicado) {
+            duplicadas++;
+            return false;
+        }
+
+        // Inserción ordenada desde el final (casi siempre es el seq más nuevo)
+        int k = cantidad;
+        while (k > 0) {
+            int s = seqs[(cabeza + k - 1) & MASK];
+            if (s == seq) {
+                duplicadas++;
+                return false;
+            }
+            if (s < seq) break;
+            k--;
+        }
+        if (cantidad == CAPACIDAD) {
+            desbordadas++;
+            return false;
+        }
+
+        for (int j = cantidad; j > k; j--) {
+            int hacia = (cabeza + j) & MASK;
+            int desde = (cabeza + j - 1) & MASK;
+            seqs[hacia] = seqs[desde];
+            ticks[hacia] = ticks[desde];
+        }
+        int i = (cabeza + k) & MASK;
+        seqs[i] = seq;
+        ticks[i] = Math.min(tick, tickActual + ADELANTO_MAX);
+        cantidad++;
+        return true;
+    }
+
+    // Si hay un salto para el paso que arranca en tick, lo consume y devuelve su seq; si no, 0
+    int tomar(int tick) {
+        if (cantidad == 0 || ticks[cabeza] > tick) return 0;
+        if (ticks[cabeza] < tick) tardias++;
+        tickTomado = ticks[cabeza];
+        int seq = seqs[cabeza];
+        cabeza = (cabeza + 1) & MASK;
+        cantidad--;
+        seqAplicado = seq;
+        aplicadas++;
+        return seq;
+    }
+
+    void contarRebobinada() { rebobinadas++; }
+
+    // Tick que pidió el cliente para el último salto tomado
+    int tickTomado() { return tickTomado; }
+    int seqAplicado() { return seqAplicado; }
+    int aplicadas() { return aplicadas; }
+    int duplicadas() { return duplicadas; }
+    int tardias() { return tardias; }
+    int rebobinadas() { return rebobinadas; }
+    int desbordadas() { return desbordadas; }
+}
@@ -0,0 +1,68 @@
+package red;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Saltos en camino del hilo receptor al worker de la sala: cola circular de un productor y
+// un consumidor sin locks, como ColaEnvio.Productor. El receptor publica cada salto de un
+// INPUT y el worker los vacía al empezar el paso (GameSim#tick), así BufferEntradas y el
+// resto del estado de la simulación los toca un solo hilo.
+//
+// Un solo productor: el hilo que recibe los paquetes de la sala. Si está lleno el salto se
+// descarta y se cuenta; el cliente lo repite en el próximo INPUT mientras no lo vea confirmado.
+final class BuzonEntradas {
+
+    // Lo que recibe cada salto al vaciar el buzón
+    interface Receptor {
+        void salto(int partida, int id, int seq, int tick);
+    }
+
+    private final long[] saltos;  // seq << 32 | tick
+    private final int[] origen;   // partida << 8 | id
+    private final int mask;
+
+    private final AtomicLong cola = new AtomicLong();   // la escribe el productor
+    private final AtomicLong cabeza = new AtomicLong(); // la escribe el worker
+
+    private volatile long descartados; // solo el productor
+
+    BuzonEntradas(int capacidad) {
+        int cap = Integer.highestOneBit(Math.max(2, capacidad) - 1) << 1;
+        saltos = new long[cap];
+        origen = new int[cap];
+        mask = cap - 1;
+    }
+
+    // Solo el productor. partida: la de GameSim al publicar, para descartar al vaciar lo que
+    // llegó de una partida anterior. seq 0 = salto directo (sin seq ni tick).
+    boolean publicar(int partida, int id, int seq, int tick) {
+        long t = cola.get();
+        if (t - cabeza.get() > mask) {
+            descartados++;
+            return false;
+        }
+        int i = (int) (t & mask);
+        saltos[i] = ((long) seq << 32) | (tick & 0xFFFFFFFFL);
+        origen[i] = (partida << 8) | id;
+        cola.lazySet(t + 1);
+        return true;
+    }
+
+    // Solo el worker. Devuelve cuántos saltos pasó al receptor.
+    int vaciar(Receptor r) {
+        long h = cabeza.get();
+        long t = cola.get();
+        int n = (int) (t - h);
+        for (; h < t; h++) {
+            int i = (int) (h & mask);
+            long s = saltos[i];
+            int o = origen[i];
+            r.salto(o >>> 8, o & 0xFF, (int) (s >>> 32), (int) s);
+        }
+        cabeza.lazySet(t);
+        return n;
+    }
+
+    long descartados() {
+        return descartados;
+    }
+}
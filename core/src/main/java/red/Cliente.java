@@ -0,0 +1,59 @@
+package red;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+// Cliente registrado. La clave es su dirección de socket (IP:PUERTO).
+final class Cliente {
+    // Slot dentro de la sala (1..capacidad). Es el "P1/P2/..." de los mensajes.
+    final int id;
+    final InetAddress ip;
+    final int puerto;
+    final InetSocketAddress direccion;
+    final Sala sala;
+    // Negociado en el registro: snapshots binarios (SnapshotFormat) o texto STATE;...
+    final boolean binario;
+    // Clave en RatingJugadores: la que mandó en QUEUE, o su IP
+    final String claveRating;
+    volatile long ultimoMsgMs;
+
+    // Último tick de snapshot que confirmó (ACK;tick=N). -1 = ninguno, va snapshot completo
+    volatile int ultimoAck = -1;
+
+    // false al sacarlo del índice (desconexión o timeout)
+    volatile boolean registrado = true;
+
+    // Enlaces y tick de vencimiento en RuedaTimeouts (solo los toca el hilo de timeouts)
+    Cliente ruedaSig;
+    Cliente ruedaAnt;
+    long ruedaTick;
+
+    // Cada cuánto se le mandan snapshots (solo binarios)
+    final ControlTasa tasa;
+
+    // Por tick de snapshot (tick & (HistorialSnapshots.CAPACIDAD - 1)): mates que ese
+    // snapshot le dejó exactos (bit id-1); los demás le quedaron viejos. Y cuántos deltas
+    // se le mandaron, para rotar los mates lejanos (InteresJugadores). Solo el worker.
+    final long[] exactos = new long[HistorialSnapshots.CAPACIDAD];
+    int vueltaLejanos;
+
+    Cliente(int id, InetSocketAddress direccion, Sala sala, boolean binario) {
+        this(id, direccion, sala, binario, direccion.getAddress().getHostAddress());
+    }
+
+    Cliente(int id, InetSocketAddress direccion, Sala sala, boolean binario, String claveRating) {
+        this.id = id;
+        this.ip = direccion.getAddress();
+        this.puerto = direccion.getPort();
+        this.direccion = direccion;
+        this.sala = sala;
+        this.binario = binario;
+        this.claveRating = claveRating;
+        this.ultimoMsgMs = System.currentTimeMillis();
+        this.tasa = new ControlTasa(nombre());
+    }
+
+    String nombre() {
+        return "S" + sala.id + "/P" + id;
+    }
+}
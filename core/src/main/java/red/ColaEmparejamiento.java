@@ -0,0 +1,255 @@
+package red;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// Cola de matchmaking. Los que mandan QUEUE esperan acá en una cubeta por (RTT, rating);
+// cada cubeta es una cola de prioridad por orden de llegada, así que encolar y sacar al más
+// viejo cuesta O(log n). La pasada periódica (emparejar) arma grupos dentro de una cubeta y,
+// a medida que el primero de la fila espera más, le abre las vecinas: primero rating
+// parecido, después RTT parecido, al final cualquiera y con los que haya.
+//
+// La cubeta se elige al encolar y no cambia: los QUEUE siguientes solo lo mantienen vivo.
+// Los que se van (DISCONNECT, dejan de mandar QUEUE o se registran con Conectar) se marcan
+// y se descartan cuando llegan a la cabeza de su cubeta.
+//
+// La usan el hilo de red (encolar/quitar) y el de matchmaking (emparejar): todo sincronizado
+// sobre la cola, sin tomar el lock del servidor.
+final class ColaEmparejamiento {
+
+    // Techo de cada cubeta: <40, <80, <150, resto (ms) y <2, <5, <10, <20, resto (puntaje)
+    static final int[] LIMITES_RTT = {40, 80, 150};
+    static final float[] LIMITES_RATING = {2f, 5f, 10f, 20f};
+    static final int CUBETAS_RTT = LIMITES_RTT.length + 1;
+    static final int CUBETAS_RATING = LIMITES_RATING.length + 1;
+
+    // RTT que se asume si el cliente no manda uno
+    static final int RTT_DESCONOCIDO = 100;
+
+    // Esperas del primero de la fila a partir de las que se abren cubetas vecinas
+    static final long AMPLIAR_RATING_MS = 3_000L;  // rating ±1, mismo RTT
+    static final long AMPLIAR_RTT_MS = 6_000L;     // RTT ±1, cualquier rating
+    static final long CUALQUIERA_MS = 10_000L;     // todo, y alcanza con Sala.MIN_JUGADORES
+
+    // Sin un QUEUE en este tiempo se lo da por ido
+    static final long VENCE_MS = 5_000L;
+
+    static final int MAX_EN_COLA = 1 << 16;
+
+    // Histograma de esperas hasta emparejar: cajas de 100 ms hasta 60 s (la última junta el resto)
+    private static final int CAJA_MS = 100;
+    private static final int CAJAS = 600;
+
+    static final class EnCola {
+        final InetSocketAddress direccion;
+        final boolean binario;
+        final String clave;   // de RatingJugadores
+        final int cubeta;
+        final long desdeMs;
+        final long orden;     // desempata llegadas en el mismo ms
+
+        long ultimoMsgMs;
+        int rttMs;
+        boolean fuera;        // ya no está en la cola (emparejado o se fue)
+
+        EnCola(InetSocketAddress direccion, boolean binario, String clave, int cubeta, long desdeMs, long orden) {
+            this.direccion = direccion;
+            this.binario = binario;
+            this.clave = clave;
+            this.cubeta = cubeta;
+            this.desdeMs = desdeMs;
+            this.orden = orden;
+        }
+    }
+
+    private final List<PriorityQueue<EnCola>> cubetas = new ArrayList<>(CUBETAS_RTT * CUBETAS_RATING);
+    private final int[] activos = new int[CUBETAS_RTT * CUBETAS_RATING];
+    private final HashMap<InetSocketAddress, EnCola> porDireccion = new HashMap<>();
+    private long proximoOrden;
+
+    private final int[] esperas = new int[CAJAS + 1];
+    private int muestras;
+    private long vencidos;
+
+    ColaEmparejamiento() {
+        for (int i = 0; i < CUBETAS_RTT * CUBETAS_RATING; i++) {
+            cubetas.add(new PriorityQueue<>(16, (a, b) -> Long.compare(a.orden, b.orden)));
+        }
+    }
+
+    static int cubeta(int rttMs, float rating) {
+        int r = 0;
+        int rtt = rttMs < 0 ? RTT_DESCONOCIDO : rttMs;
+        while (r < LIMITES_RTT.length && rtt >= LIMITES_RTT[r]) r++;
+        int s = 0;
+        while (s < LIMITES_RATING.length && rating >= LIMITES_RATING[s]) s++;
+        return r * CUBETAS_RATING + s;
+    }
+
+    // Alta o renovación (cada QUEUE). Devuelve la entrada, o null si la cola está llena.
+    synchronized EnCola encolar(InetSocketAddress dir, boolean binario, String clave, float rating, int rttMs, long ahoraMs) {
+        EnCola e = porDireccion.get(dir);
+        if (e != null) {
+            e.ultimoMsgMs = ahoraMs;
+            if (rttMs >= 0) e.rttMs = rttMs;
+            return e;
+        }
+        if (porDireccion.size() >= MAX_EN_COLA) return null;
+
+        e = new EnCola(dir, binario, clave, cubeta(rttMs, rating), ahoraMs, proximoOrden++);
+        e.ultimoMsgMs = ahoraMs;
+        e.rttMs = rttMs;
+        meter(e);
+        return e;
+    }
+
+    synchronized boolean quitar(InetSocketAddress dir) {
+        EnCola e = porDireccion.remove(dir);
+        if (e == null) return false;
+        e.fuera = true;
+        activos[e.cubeta]--;
+        return true;
+    }
+
+    // Arma los grupos que se puedan (de porSala, o de al menos Sala.MIN_JUGADORES cuando el
+    // primero ya esperó CUALQUIERA_MS) y los agrega a grupos, sacándolos de la cola.
+    synchronized void emparejar(long ahoraMs, int porSala, List<EnCola[]> grupos) {
+        for (int b = 0; b < cubetas.size(); b++) {
+            while (true) {
+                EnCola primero = cabeza(b, ahoraMs);
+                if (primero == null) break;
+
+                long espera = ahoraMs - primero.desdeMs;
+                int dRtt = espera >= CUALQUIERA_MS ? CUBETAS_RTT : espera >= AMPLIAR_RTT_MS ? 1 : 0;
+                int dRating = espera >= AMPLIAR_RTT_MS ? CUBETAS_RATING : espera >= AMPLIAR_RATING_MS ? 1 : 0;
+                int rtt0 = b / CUBETAS_RATING;
+                int rating0 = b % CUBETAS_RATING;
+                int rttMin = Math.max(0, rtt0 - dRtt), rttMax = Math.min(CUBETAS_RTT - 1, rtt0 + dRtt);
+                int ratMin = Math.max(0, rating0 - dRating), ratMax = Math.min(CUBETAS_RATING - 1, rating0 + dRating);
+
+                // Cuenta aproximada: puede incluir vencidos que todavía no llegaron a la cabeza
+                int hay = 0;
+                for (int r = rttMin; r <= rttMax; r++) {
+                    for (int s = ratMin; s <= ratMax; s++) hay += activos[r * CUBETAS_RATING + s];
+                }
+                boolean alcanzaMenos = espera >= CUALQUIERA_MS;
+                if (hay < porSala && !(alcanzaMenos && hay >= Sala.MIN_JUGADORES)) break;
+
+                // De las cubetas abiertas, siempre el que más esperó
+                int n = Math.min(hay, porSala);
+                EnCola[] g = new EnCola[n];
+                int k = 0;
+                while (k < n) {
+                    EnCola mejor = null;
+                    for (int r = rttMin; r <= rttMax; r++) {
+                        for (int s = ratMin; s <= ratMax; s++) {
+                            EnCola c = cabeza(r * CUBETAS_RATING + s, ahoraMs);
+                            if (c != null && (mejor == null || c.orden < mejor.orden)) mejor = c;
+                        }
+                    }
+                    if (mejor == null) break;
+                    sacar(mejor);
+                    g[k++] = mejor;
+                }
+
+                if (k < porSala && !(alcanzaMenos && k >= Sala.MIN_JUGADORES)) {
+                    // Faltaron los vencidos que se contaron: esperan a la próxima pasada
+                    for (int i = 0; i < k; i++) devolverUno(g[i]);
+                    break;
+                }
+                if (k < n) {
+                    EnCola[] corto = new EnCola[k];
+                    System.arraycopy(g, 0, corto, 0, k);
+                    g = corto;
+                }
+                grupos.add(g);
+            }
+        }
+    }
+
+    // Un grupo que no se pudo ubicar (server lleno) vuelve con su antigüedad original
+    synchronized void devolver(EnCola[] grupo) {
+        for (EnCola e : grupo) devolverUno(e);
+    }
+
+    // El grupo ya tiene sala: cuenta sus esperas para los percentiles
+    synchronized void ubicados(EnCola[] grupo, long ahoraMs) {
+        for (EnCola e : grupo) {
+            long espera = ahoraMs - e.desdeMs;
+            esperas[(int) Math.min(CAJAS, Math.max(0L, espera) / CAJA_MS)]++;
+            muestras++;
+        }
+    }
+
+    synchronized int tamanio() {
+        return porDireccion.size();
+    }
+
+    // Línea de métricas: enCola=12 ubicados=40 esperaMs=p50/p90/p99=300/2100/9800 vencidos=1.
+    // Los percentiles son de lo ubicado desde la línea anterior.
+    synchronized String resumen() {
+        StringBuilder sb = new StringBuilder(96);
+        sb.append("enCola=").append(porDireccion.size())
+            .append(" ubicados=").append(muestras)
+            .append(" esperaMs=p50/p90/p99=").append(percentil(0.50)).append('/')
+            .append(percentil(0.90)).append('/').append(percentil(0.99))
+            .append(" vencidos=").append(vencidos);
+        Arrays.fill(esperas, 0);
+        muestras = 0;
+        return sb.toString();
+    }
+
+    // Techo de la caja donde cae el percentil p (0 si no hubo muestras)
+    private int percentil(double p) {
+        if (muestras == 0) return 0;
+        long objetivo = (long) Math.ceil(p * muestras);
+        long acum = 0;
+        for (int i = 0; i <= CAJAS; i++) {
+            acum += esperas[i];
+            if (acum >= objetivo) return (i + 1) * CAJA_MS;
+        }
+        return (CAJAS + 1) * CAJA_MS;
+    }
+
+    // Más viejo que sigue en la cubeta, descartando los marcados y los vencidos
+    private EnCola cabeza(int b, long ahoraMs) {
+        PriorityQueue<EnCola> q = cubetas.get(b);
+        EnCola e;
+        while ((e = q.peek()) != null) {
+            if (!e.fuera && ahoraMs - e.ultimoMsgMs <= VENCE_MS) return e;
+            q.poll();
+            if (!e.fuera) {
+                e.fuera = true;
+                activos[b]--;
+                porDireccion.remove(e.direccion);
+                vencidos++;
+            }
+        }
+        return null;
+    }
+
+    // Solo la cabeza de su cubeta
+    private void sacar(EnCola e) {
+        cubetas.get(e.cubeta).poll();
+        activos[e.cubeta]--;
+        porDireccion.remove(e.direccion);
+        e.fuera = true;
+    }
+
+    private void devolverUno(EnCola e) {
+        // Si mientras tanto volvió a encolarse, vale la entrada nueva
+        if (porDireccion.containsKey(e.direccion)) return;
+        e.fuera = false;
+        meter(e);
+    }
+
+    private void meter(EnCola e) {
+        cubetas.get(e.cubeta).add(e);
+        activos[e.cubeta]++;
+        porDireccion.put(e.direccion, e);
+    }
+}
@@ -0,0 +1,286 @@
+package red;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Salida de snapshots. Los workers de simulación codifican cada snapshot una sola vez
+// en un Bloque, encolan un envío por destinatario y al terminar la pasada despiertan
+// al hilo de envío, que vacía todas las colas de corrido (Java no expone sendmmsg,
+// así que el lote es "todo lo del tick en un solo hilo, sin saltos entre hilos").
+// Cada worker tiene su propia cola SPSC, así que encolar no toma locks.
+//
+// Un envío es un tramo (desde, largo) de un bloque: los snapshots de una sala en un tick
+// (el completo y los delta de cada espectador) van uno detrás de otro en el mismo bloque,
+// y se toma otro solo cuando no queda lugar.
+final class ColaEnvio {
+
+    // Buffer compartido por los envíos de una pasada; vuelve al pool cuando el último
+    // destinatario se envió (o se descartó). El worker escribe en buf mientras el hilo de
+    // envío ya manda los tramos encolados, así que éste usa su propia vista (salida).
+    static final class Bloque {
+        final ByteBuffer buf;
+        final ByteBuffer salida;
+        final AtomicInteger refs = new AtomicInteger();
+
+        Bloque(int tam) {
+            buf = ByteBuffer.allocateDirect(tam);
+            salida = buf.duplicate();
+        }
+    }
+
+    private final DatagramChannel canal;
+    private final int tamBloque;
+    private final Productor[] productores;
+    private final Thread hilo;
+    private volatile boolean activo = true;
+
+    // Pool de bloques
+    private final Bloque[] libres;
+    private int cantLibres;
+    private long bloquesCreados;
+
+    // Métricas
+    private final AtomicLong descartadosCola = new AtomicLong();
+    private volatile long enviados;
+    private volatile long descartadosSocket;
+    private volatile long errores;
+    private volatile long lotes;
+    private volatile int maxProfundidad;
+
+    // Mensajes de control (handshake, registro, lobby, PARTIDA_INICIADA...): salen directo
+    // desde cualquier hilo, no por la cola, pero se cuentan acá con los snapshots
+    private final AtomicLong controlEnviados = new AtomicLong();
+    private final AtomicLong controlDescartados = new AtomicLong();
+    private final AtomicLong controlErrores = new AtomicLong();
+
+    ColaEnvio(DatagramChannel canal, int productores, int capacidadPorProductor, int tamBloque) {
+        this.canal = canal;
+        this.tamBloque = tamBloque;
+        this.productores = new Productor[productores];
+        for (int i = 0; i < productores; i++) {
+            this.productores[i] = new Productor(capacidadPorProductor);
+        }
+        this.libres = new Bloque[capacidadPorProductor * productores];
+
+        hilo = new Thread(this::loop, "ServidorFlappy-Envio");
+        hilo.setDaemon(true);
+    }
+
+    void iniciar() {
+        hilo.start();
+    }
+
+    void detener() {
+        activo = false;
+        LockSupport.unpark(hilo);
+    }
+
+    Productor productor(int i) {
+        return productores[i];
+    }
+
+    // =========================
+    // Bloques
+    // =========================
+
+    // El bloque sale con 1 referencia (la del que lo llena); soltarla con soltar() al terminar de encolar
+    synchronized Bloque tomarBloque() {
+        Bloque b;
+        if (cantLibres == 0) {
+            bloquesCreados++;
+            b = new Bloque(tamBloque);
+        } else {
+            b = libres[--cantLibres];
+            libres[cantLibres] = null;
+        }
+        b.refs.set(1);
+        b.buf.clear();
+        return b;
+    }
+
+    // Uno con lugar para al menos largo bytes: más grande que tamBloque no sale del pool
+    // (ni vuelve a él)
+    Bloque tomarBloque(int largo) {
+        if (largo <= tamBloque) return tomarBloque();
+        Bloque b = new Bloque(largo);
+        b.refs.set(1);
+        return b;
+    }
+
+    // Una referencia más, para seguir encolando tramos de b después de soltar el resto
+    void retener(Bloque b) {
+        b.refs.incrementAndGet();
+    }
+
+    void soltar(Bloque b) {
+        if (b.refs.decrementAndGet() == 0) devolver(b);
+    }
+
+    private synchronized void devolver(Bloque b) {
+        if (b.buf.capacity() != tamBloque) return;
+        if (cantLibres < libres.length) libres[cantLibres++] = b;
+    }
+
+    // =========================
+    // Cola por worker (un productor, un consumidor)
+    // =========================
+    final class Productor {
+        private final Bloque[] bloques;
+        private final int[] desdes;
+        private final int[] largos;
+        private final InetSocketAddress[] destinos;
+        private final int mask;
+
+        private final AtomicLong cola = new AtomicLong();   // la escribe el worker
+        private final AtomicLong cabeza = new AtomicLong(); // la escribe el hilo de envío
+
+        Productor(int capacidad) {
+            int cap = Integer.highestOneBit(Math.max(2, capacidad) - 1) << 1;
+            bloques = new Bloque[cap];
+            desdes = new int[cap];
+            largos = new int[cap];
+            destinos = new InetSocketAddress[cap];
+            mask = cap - 1;
+        }
+
+        // Cola un envío de b[desde, desde + largo) a destino, ya escrito en b.buf. Si no hay
+        // lugar lo descarta (y lo cuenta).
+        void encolar(Bloque b, int desde, int largo, InetSocketAddress destino) {
+            long t = cola.get();
+            if (t - cabeza.get() > mask) {
+                descartadosCola.incrementAndGet();
+                return;
+            }
+            b.refs.incrementAndGet();
+            int i = (int) (t & mask);
+            bloques[i] = b;
+            desdes[i] = desde;
+            largos[i] = largo;
+            destinos[i] = destino;
+            cola.lazySet(t + 1);
+        }
+
+        // Fin de la pasada del worker: que salga el lote
+        void flush() {
+            LockSupport.unpark(hilo);
+        }
+
+        // Cualquier hilo. false si no salió: buffer de envío del socket lleno (el canal es no
+    // bloqueante y send devuelve 0) o error de E/S.
+    boolean enviarControl(ByteBuffer msg, InetSocketAddress destino) {
+        try {
+            if (canal.send(msg, destino) == 0) {
+                controlDescartados.incrementAndGet();
+                return false;
+            }
+            controlEnviados.incrementAndGet();
+            return true;
+        } catch (IOException ioe) {
+            controlErrores.incrementAndGet();
+            return false;
+        }
+    }
+
+    int profundidad() {
+            return (int) (cola.get() - cabeza.get());
+        }
+
+        // Solo desde el hilo de envío
+        private int drenar() {
+            long h = cabeza.get();
+            long t = cola.get();
+            int n = (int) (t - h);
+            for (; h < t; h++) {
+                int i = (int) (h & mask);
+                Bloque b = bloques[i];
+                InetSocketAddress d = destinos[i];
+                bloques[i] = null;
+                destinos[i] = null;
+                enviar(b, desdes[i], largos[i], d);
+                soltar(b);
+            }
+            cabeza.lazySet(t);
+            return n;
+        }
+    }
+
+    // =========================
+    // Hilo de envío
+    // =========================
+    private void loop() {
+        while (activo) {
+            int prof = profundidad();
+            if (prof > maxProfundidad) maxProfundidad = prof;
+
+            int n = 0;
+            for (Productor p : productores) n += p.drenar();
+
+            if (n > 0) {
+                lotes++;
+            } else {
+                // Nada pendiente: espero el próximo flush (con tope por si se perdió un unpark)
+                LockSupport.parkNanos(this, 5_000_000L);
+            }
+        }
+    }
+
+    private void enviar(Bloque b, int desde, int largo, InetSocketAddress destino) {
+        ByteBuffer buf = b.salida;
+        buf.limit(desde + largo);
+        buf.position(desde);
+        try {
+            if (canal.send(buf, destino) == 0) {
+                descartadosSocket++; // buffer de envío del socket lleno
+            } else {
+                enviados++;
+            }
+        } catch (IOException ioe) {
+            errores++;
+        }
+    }
+
+    // Cualquier hilo. false si no salió: buffer de envío del socket lleno (el canal es no
+    // bloqueante y send devuelve 0) o error de E/S.
+    boolean enviarControl(ByteBuffer msg, InetSocketAddress destino) {
+        try {
+            if (canal.send(msg, destino) == 0) {
+                controlDescartados.incrementAndGet();
+                return false;
+            }
+            controlEnviados.incrementAndGet();
+            return true;
+        } catch (IOException ioe) {
+            controlErrores.incrementAndGet();
+            return false;
+        }
+    }
+
+    int profundidad() {
+        int n = 0;
+        for (Productor p : productores) n += p.profundidad();
+        return n;
+    }
+
+    String resumen() {
+        long creados;
+        synchronized (this) {
+            creados = bloquesCreados;
+        }
+        return "envio{enviados=" + enviados
+            + " lotes=" + lotes
+            + " cola=" + profundidad()
+            + " maxCola=" + maxProfundidad
+            + " descCola=" + descartadosCola.get()
+            + " descSocket=" + descartadosSocket
+            + " errores=" + errores
+            + " bloques=" + creados
+            + " control=" + controlEnviados.get()
+            + " descControl=" + controlDescartados.get()
+            + " erroresControl=" + controlErrores.get() + "}";
+    }
+}
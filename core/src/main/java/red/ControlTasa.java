@@ -0,0 +1,95 @@
+package red;
+
+import com.badlogic.Flappy.SnapshotFormat;
+
+// Tasa de snapshots de un cliente binario. La simulación sigue a 60 Hz; lo que baja es
+// cada cuántos ticks se le manda estado (1, 2 o 3 -> 60/30/20 Hz). Se evalúa una vez por
+// ventana con la pérdida inferida de los ACK (snapshots mandados vs confirmados) y el RTT
+// que el cliente reporta en PING;rtt=N. Baja apenas el enlace anda mal y sube de a un
+// escalón después de varias ventanas buenas, para no oscilar.
+//
+// Hilos: el receptor (el shard dueño de la sala) escribe rttMs y confirmados (único
+// escritor de cada uno); el resto lo toca solo el worker de la sala.
+final class ControlTasa {
+
+    static final int[] DIVISORES = { 1, 2, 3 };
+
+    private static final int VENTANA_TICKS = SnapshotFormat.TICK_RATE; // 1 s
+    private static final float PERDIDA_MALA = 0.10f;
+    private static final float PERDIDA_BUENA = 0.03f;
+    private static final int RTT_MALO_MS = 250;
+    private static final int RTT_BUENO_MS = 150;
+    private static final int VENTANAS_PARA_SUBIR = 3;
+
+    private final String nombre; // para los logs
+
+    volatile int rttMs = -1;
+    volatile int confirmados;
+
+    private int nivel;          // índice en DIVISORES
+    private volatile int hz = SnapshotFormat.TICK_RATE;
+    private float perdida;      // EWMA
+    private int buenas;
+    private int inicioVentana = -1;
+    private int enviados;
+    private int confirmadosInicio;
+
+    ControlTasa(String nombre) {
+        this.nombre = nombre;
+    }
+
+    // Al arrancar partida: el tick vuelve a 0. La tasa se conserva (el enlace es el mismo)
+    void reiniciarVentana() {
+        inicioVentana = -1;
+    }
+
+    // ¿Le toca snapshot a este cliente en tick? fase reparte los clientes de una sala
+    // entre ticks para que no salgan todos juntos a 20/30 Hz.
+    boolean toca(int tick, int fase) {
+        if (inicioVentana < 0 || tick < inicioVentana) {
+            abrirVentana(tick);
+        } else if (tick - inicioVentana >= VENTANA_TICKS) {
+            evaluar();
+            abrirVentana(tick);
+        }
+        return (tick + fase) % DIVISORES[nivel] == 0;
+    }
+
+    void enviado() {
+        enviados++;
+    }
+
+    private void abrirVentana(int tick) {
+        inicioVentana = tick;
+        enviados = 0;
+        confirmadosInicio = confirmados;
+    }
+
+    private void evaluar() {
+        if (enviados == 0) return;
+        float p = 1f - (float) (confirmados - confirmadosInicio) / enviados;
+        p = Math.max(0f, Math.min(1f, p));
+        perdida = perdida * 0.5f + p * 0.5f;
+
+        int rtt = rttMs;
+        int antes = nivel;
+        if (perdida > PERDIDA_MALA || rtt > RTT_MALO_MS) {
+            buenas = 0;
+            if (nivel < DIVISORES.length - 1) nivel++;
+        } else if (perdida < PERDIDA_BUENA && rtt < RTT_BUENO_MS) {
+            if (++buenas >= VENTANAS_PARA_SUBIR && nivel > 0) {
+                nivel--;
+                buenas = 0;
+            }
+        } else {
+            buenas = 0;
+        }
+        if (nivel != antes) {
+            hz = SnapshotFormat.TICK_RATE / DIVISORES[nivel];
+            LoggerRed.info("TASA", nombre + " -> " + hz + " Hz (perdida=" + Math.round(perdida * 100) + "% rtt=" + rtt + "ms)");
+        }
+    }
+
+    int hz() { return hz; }
+    float perdida() { return perdida; }
+}
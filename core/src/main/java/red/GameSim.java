@@ -1,21 +1,41 @@
 package red;
 
 import com.badlogic.Flappy.Constants;
-import red.TermoSim;
+import com.badlogic.Flappy.SnapshotFormat;
+import com.badlogic.Flappy.TermoLayout;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Simulación de una partida a paso fijo (SnapshotFormat.TICK_DT). Es determinística: con
+// el mismo seed y los mismos saltos en los mismos ticks da exactamente el mismo estado, y
+// los termos salen de TermoLayout, que el cliente también puede calcular.
+//
+// Admite de 2 a Sala.MAX_JUGADORES mates en el mismo mundo. El estado por jugador vive en
+// arrays primitivos indexados por id (1..jugadores) y los conjuntos (vivos, saltos, quién
+// pasó cada termo) son máscaras long con el bit id-1, así un paso recorre solo los bits
+// prendidos y no hay objetos por mate.
+final class GameSim {
 
-import java.util.ArrayList;
-import java.util.Random;
+    // Seed fijo para benchmarks / pruebas (resetWithTermos)
+    static final long SEED_PRUEBAS = 0x5EEDL;
 
-final class GameSim {
+    // tickCliente de un salto sin tick: se aplica en el próximo paso
+    static final int LO_ANTES_POSIBLE = -1;
 
-    private static final float TERMO_MIN_DISTANCE = 250f;
+    // Saltos en el buzón por jugador antes de descartar (cada INPUT trae hasta 8 repetidos)
+    private static final int BUZON_POR_JUGADOR = 32;
 
-    // Lobby ready indexado por id (1..2). index 0 sin uso.
-    final boolean[] ready = new boolean[3];
+    private final int jugadores;
+    private final long todos;
+
+    // Lobby ready indexado por id (1..jugadores). index 0 sin uso.
+    final boolean[] ready;
 
     // Mundo / termos
-    private final Random rng = new Random();
-    private final ArrayList<TermoSim> termos = new ArrayList<>();
+    private long seed;
+    private final AnilloTermos termos = new AnilloTermos();
 
     // Parámetros de colisión: necesito ancho/alto del mate y ancho del termo.
     // Como servidor no carga texturas, usted debe setear estos valores coherentes con los assets.
@@ -26,178 +46,518 @@ final class GameSim {
     private float mateHitboxPad = 8f; // px que se recortan por lado (más grande = más permisivo)
     private float termoW = 80f;
 
-    // Mates
-    private MateSim p1;
-    private MateSim p2;
+    // Hitbox recortada, relativa a la posición del mate
+    private final float hitPad;
+    private final float hitW;
+    private final float hitH;
 
-    private boolean p1Alive = true;
-    private boolean p2Alive = true;
+    // Los mates vuelan en columnas de x fija (TermoLayout#columnaX, la misma regla que dibuja
+    // el cliente). Copiadas a un array para los loops del tick.
+    private static final float[] COLUMNAS_X = new float[TermoLayout.COLUMNAS];
+    static {
+        for (int c = 0; c < COLUMNAS_X.length; c++) COLUMNAS_X[c] = TermoLayout.columnaX(c);
+    }
 
-    int score1 = 0;
-    int score2 = 0;
+    // Ids de cada columna (bit id-1)
+    private final long[] columna = new long[COLUMNAS_X.length];
 
-    // Timers
-    private float termoTimer = 0f;
+    // Mates, por id (1..jugadores). index 0 sin uso
+    private final float[] y;
+    private final float[] vy;
+    private final int[] score;
 
-    // Input queued (para aplicar 1 salto por tick si llegó)
-    private boolean jumpP1 = false;
-    private boolean jumpP2 = false;
+    // Jugadores que arrancaron la partida y siguen en la sala, y cuáles de ellos están vivos
+    private long presentes;
+    private long vivos;
 
-    private static final float P1_X = 120f;
-    private static final float P2_X = 160f; // o 180f si quiere más separación
+    // Pasos simulados desde el inicio de la partida
+    private int tick = 0;
 
+    // Salto directo para el próximo paso (reproductor / benchmarks, sin seq)
+    private long saltosDirectos = 0L;
 
-    void resetForNewMatch() {
-        termos.clear();
-        termoTimer = 0f;
+    // Saltos de red con seq y tick, por id (1..jugadores). index 0 sin uso
+    private final BufferEntradas[] entradas;
 
-        score1 = 0;
-        score2 = 0;
+    // Saltos que llegan desde otro hilo (queueJump) hasta que el paso los pasa a entradas.
+    // partida cambia en cada reset, así lo que quedó en camino de la anterior se descarta.
+    private final BuzonEntradas buzon;
+    private final BuzonEntradas.Receptor alVaciar = this::recibirSalto;
+    private volatile int partida;
 
-        p1Alive = true;
-        p2Alive = true;
+    // Saltos consumidos en el último paso, para GrabacionPartida
+    private long saltosUltimoTick = 0L;
 
-        // Reset mates al centro
-        float startY = Constants.VIRTUAL_HEIGHT / 2f;
-        p1 = new MateSim(P1_X, startY, mateW, mateH, mateHitboxPad);
-        p2 = new MateSim(P2_X, startY, mateW, mateH, mateHitboxPad);
+    // Jugadores que se fueron a mitad de partida (los marca otro hilo con eliminar) y los
+    // que se aplicaron en el último paso
+    private final AtomicLong bajas = new AtomicLong();
+    private long bajasUltimoTick = 0L;
+
+    // Compensación de lag: últimos pasos para re-simular un mate cuyo salto llegó tarde.
+    // rebobinado[id] = ticks que se rebobinó en el último paso (vale si su bit está en
+    // rebobinados); tickMuerte[id] sirve para seguir aceptando saltos que podrían salvarlo
+    // dentro de la ventana.
+    private final HistorialMundo historial;
+    private final int[] rebobinado;
+    private long rebobinados = 0L;
+    private final int[] tickMuerte;
 
+    // seq del último INPUT aplicado, por id (1..jugadores). Va en los snapshots para que el
+    // cliente reconcilie su predicción.
+    private final int[] seqAplicado;
 
+    GameSim() {
+        this(2);
+    }
 
-        jumpP1 = false;
-        jumpP2 = false;
+    GameSim(int jugadores) {
+        if (jugadores < 2 || jugadores > Sala.MAX_JUGADORES) {
+            throw new IllegalArgumentException("jugadores=" + jugadores);
+        }
+        this.jugadores = jugadores;
+        this.todos = jugadores == 64 ? -1L : (1L << jugadores) - 1;
+
+        ready = new boolean[jugadores + 1];
+        y = new float[jugadores + 1];
+        vy = new float[jugadores + 1];
+        score = new int[jugadores + 1];
+        rebobinado = new int[jugadores + 1];
+        tickMuerte = new int[jugadores + 1];
+        seqAplicado = new int[jugadores + 1];
+        entradas = new BufferEntradas[jugadores + 1];
+        for (int id = 1; id <= jugadores; id++) {
+            entradas[id] = new BufferEntradas();
+            columna[TermoLayout.columna(id)] |= 1L << (id - 1);
+        }
+        historial = new HistorialMundo(jugadores);
+        buzon = new BuzonEntradas(jugadores * BUZON_POR_JUGADOR);
+
+        hitPad = Math.max(0f, mateHitboxPad);
+        hitW = mateW - 2f * hitPad;
+        hitH = mateH - 2f * hitPad;
+    }
+
+    int jugadores() {
+        return jugadores;
+    }
+
+    void resetForNewMatch(long seed) {
+        resetForNewMatch(seed, todos);
+    }
+
+    // presentes: máscara de los slots ocupados (bit id-1). Los que faltan arrancan muertos.
+    void resetForNewMatch(long seed, long presentes) {
+        partida = (partida + 1) & 0xFFFFFF;
+        this.seed = seed;
+        termos.limpiar();
+        tick = 0;
+
+        this.presentes = presentes & todos;
+        vivos = this.presentes;
+
+        // Reset mates al centro
+        Arrays.fill(y, Constants.VIRTUAL_HEIGHT / 2f);
+        Arrays.fill(vy, 0f);
+        Arrays.fill(score, 0);
+
+        saltosDirectos = 0L;
+        saltosUltimoTick = 0L;
+        bajas.set(0L);
+        bajasUltimoTick = 0L;
+        for (int id = 1; id <= jugadores; id++) entradas[id].limpiar();
+        historial.limpiar();
+        rebobinados = 0L;
+        Arrays.fill(rebobinado, 0);
+        Arrays.fill(tickMuerte, 0);
+        Arrays.fill(seqAplicado, 0);
 
         // Spawn inicial de 2 termos para no arrancar vacío
-        spawnTermo();
-        spawnTermo();
+        for (int i = 0; i < TermoLayout.INITIAL_TERMOS; i++) spawnTermo();
+    }
+
+    // Partida nueva con una cantidad fija de termos ya spawneados (benchmarks / pruebas de carga)
+    void resetWithTermos(int cantidad) {
+        resetForNewMatch(SEED_PRUEBAS);
+        termos.limpiar();
+        for (int i = 0; i < cantidad; i++) spawnTermo();
     }
 
     void resetLobbyAfterAbort() {
         // No reseteo ready si usted quiere que se mantenga. Pero usted pidió lobby simple
         // y abort con error; yo lo pongo todo en false para que el usuario vuelva a confirmar.
-        ready[1] = false;
-        ready[2] = false;
+        Arrays.fill(ready, false);
     }
 
     boolean isAlive(int id) {
-        return id == 1 ? p1Alive : p2Alive;
+        return (vivos & (1L << (id - 1))) != 0;
+    }
+
+    int vivos() {
+        return Long.bitCount(vivos);
+    }
+
+    // Presente y vivo, o muerto hace tan poco que un salto atrasado todavía puede salvarlo
+    boolean aceptaSaltos(int id) {
+        if ((presentes & (1L << (id - 1))) == 0) return false;
+        return isAlive(id) || tick - tickMuerte[id] <= HistorialMundo.VENTANA;
     }
 
+    // El jugador id se fue a mitad de partida: queda muerto desde el próximo paso y ya no
+    // se le aceptan saltos. Cualquier hilo.
+    void eliminar(int id) {
+        if (id < 1 || id > jugadores) return;
+        bajas.accumulateAndGet(1L << (id - 1), (a, b) -> a | b);
+    }
+
+    // Los queueJump los llama un solo hilo productor (el receptor de la sala, o el mismo que
+    // llama a tick en el reproductor y los benchmarks): van al buzón y el paso los toma.
     void queueJump(int id) {
-        if (id == 1) jumpP1 = true;
-        if (id == 2) jumpP2 = true;
+        if (id < 1 || id > jugadores) return;
+        buzon.publicar(partida, id, 0, 0);
     }
 
-    void tick(float dt) {
-        // Aplicar saltos en el borde del tick
-        if (p1Alive && jumpP1) p1.jump();
-        if (p2Alive && jumpP2) p2.jump();
-        jumpP1 = false;
-        jumpP2 = false;
+    // Salto de red: se aplica en el paso del tick tickCliente (o en el próximo si ya pasó;
+    // LO_ANTES_POSIBLE si no vino tick). Los seq repetidos se ignoran, así el cliente puede
+    // reenviar sin miedo.
+    void queueJump(int id, int seq, int tickCliente) {
+        if (id < 1 || id > jugadores || seq <= 0) return;
+        buzon.publicar(partida, id, seq, tickCliente);
+    }
 
-        // Si están muertos, no actualizo su física (queda congelado)
-        if (p1Alive) p1.update(dt);
-        if (p2Alive) p2.update(dt);
+    // Saltos que no entraron en el buzón (lleno) en toda la vida de la sala
+    long saltosDescartados() {
+        return buzon.descartados();
+    }
 
-        // Spawn termos
-        termoTimer += dt;
-        if (termoTimer >= Constants.TERMO_SPAWN_TIME) {
-            termoTimer = 0f;
-            spawnTermo();
-        }
+    BufferEntradas entradas(int id) {
+        return entradas[id];
+    }
+
+    // Pasa lo que llegó al buzón a BufferEntradas (lo primero del paso). Solo desde el hilo
+    // que llama a tick; sueltos, para los benchmarks que miden la entrada de un salto.
+    int vaciarBuzon() {
+        return buzon.vaciar(alVaciar);
+    }
+
+    int lastInputSeq(int id) {
+        return seqAplicado[id];
+    }
+
+    long seed() {
+        return seed;
+    }
+
+    int tickCount() {
+        return tick;
+    }
+
+    long presentes() {
+        return presentes;
+    }
+
+    long saltosUltimoTick() {
+        return saltosUltimoTick;
+    }
+
+    long bajasUltimoTick() {
+        return bajasUltimoTick;
+    }
+
+    long rebobinados() {
+        return rebobinados;
+    }
 
-        // Mover termos
-        for (int i = termos.size() - 1; i >= 0; i--) {
-            TermoSim t = termos.get(i);
-            t.update(dt);
+    // Ticks que se rebobinó al jugador id en el último paso por un salto atrasado (0 = no)
+    int rebobinado(int id) {
+        return (rebobinados & (1L << (id - 1))) != 0 ? rebobinado[id] : 0;
+    }
+
+    void tick() {
+        final float dt = SnapshotFormat.TICK_DT;
 
-            // Score por jugador, solo si vivo
-            if (p1Alive && t.tryScore(1, p1.x(), termoW)) score1++;
-            if (p2Alive && t.tryScore(2, p2.x(), termoW)) score2++;
+        final int paso = tick;
 
+        // Bajas pendientes: muertos sin tickMuerte, así no se los puede revivir
+        bajasUltimoTick = bajas.get() == 0L ? 0L : bajas.getAndSet(0L);
+        presentes &= ~bajasUltimoTick;
+        vivos &= ~bajasUltimoTick;
 
-            if (t.isOffscreen(termoW)) termos.remove(i);
+        // Lo que llegó desde el paso anterior
+        vaciarBuzon();
+
+        // Saltos de red: a lo sumo uno por jugador y paso. Uno que llegó tarde se aplica en el
+        // tick que pidió el cliente, re-simulando ese mate (ver rebobinar)
+        rebobinados = 0L;
+        for (long m = presentes; m != 0; m &= m - 1) {
+            int id = Long.numberOfTrailingZeros(m) + 1;
+            int atras = tomarEntrada(id);
+            if (atras > 0) {
+                rebobinado[id] = atras;
+                rebobinados |= 1L << (id - 1);
+            }
         }
 
-        // Colisiones: suelo/techo
-        if (p1Alive) {
-            if (p1.y() <= Constants.GROUND_HEIGHT) p1Alive = false;
-            if (p1.y() + mateH >= Constants.VIRTUAL_HEIGHT) p1Alive = false;
+        final long vivosAntes = vivos;
+
+        // Estado al empezar el paso, para poder rebobinar hasta acá más adelante
+        historial.empezar(paso, vivos);
+        for (long m = vivos; m != 0; m &= m - 1) {
+            int id = Long.numberOfTrailingZeros(m) + 1;
+            historial.guardarMate(paso, id, y[id], vy[id]);
         }
-        if (p2Alive) {
-            if (p2.y() <= Constants.GROUND_HEIGHT) p2Alive = false;
-            if (p2.y() + mateH >= Constants.VIRTUAL_HEIGHT) p2Alive = false;
+
+        // Aplicar saltos en el borde del tick
+        final long saltos = saltosDirectos;
+        saltosDirectos = 0L;
+        saltosUltimoTick = saltos;
+        historial.marcarSaltos(paso, saltos);
+
+        // Si están muertos, no actualizo su física (queda congelado)
+        for (long m = vivos; m != 0; m &= m - 1) {
+            int id = Long.numberOfTrailingZeros(m) + 1;
+            if ((saltos & (1L << (id - 1))) != 0) vy[id] = Constants.JUMP_VELOCITY;
+            vy[id] += Constants.GRAVITY * dt;
+            y[id] += vy[id] * dt;
         }
 
-        // Colisiones: termos
-        for (int i = 0; i < termos.size(); i++) {
-            TermoSim t = termos.get(i);
+        tick++;
 
-            if (p1Alive && (t.bottom.overlaps(p1.bounds()) || t.top.overlaps(p1.bounds()))) {
-                p1Alive = false;
+        // Spawn termos por cantidad de ticks
+        while (TermoLayout.spawnTick(termos.proximoId()) <= tick) spawnTermo();
+
+        // Mover termos: la x sale de (id, tick), sin acumular dt
+        float[] tx = termos.x;
+        long[] pasados = termos.pasados;
+        for (int i = 0; i < termos.cantidad; i++) {
+            int s = termos.slot(i);
+            tx[s] = TermoLayout.x(termos.primerId + i, tick);
+
+            // Score por jugador, solo si vivo (la columna del mate pasó el borde derecho del
+            // termo). Los que ya lo pasaron tienen su bit en pasados[s].
+            float borde = tx[s] + termoW;
+            long cruzaron = 0L;
+            for (int c = 0; c < COLUMNAS_X.length; c++) {
+                if (COLUMNAS_X[c] > borde) cruzaron |= columna[c];
             }
-            if (p2Alive && (t.bottom.overlaps(p2.bounds()) || t.top.overlaps(p2.bounds()))) {
-                p2Alive = false;
+            long nuevos = cruzaron & vivos & ~pasados[s];
+            if (nuevos == 0) continue;
+            pasados[s] |= nuevos;
+            for (long m = nuevos; m != 0; m &= m - 1) score[Long.numberOfTrailingZeros(m) + 1]++;
+        }
+
+        // Los que salieron de pantalla están siempre en la cabeza
+        while (termos.cantidad > 0 && tx[termos.cabeza] + termoW < 0) termos.quitarPrimero();
+
+        // Colisiones: suelo/techo
+        for (long m = vivos; m != 0; m &= m - 1) {
+            int id = Long.numberOfTrailingZeros(m) + 1;
+            if (tocaBorde(y[id])) vivos &= ~(1L << (id - 1));
+        }
+
+        // Colisiones: termos. Aunque estén todos muertos, la franja se guarda igual en el
+        // historial: un salto atrasado puede revivir a uno.
+        // Broad phase: los mates están en columnas de x fija, así que solo pueden chocar los
+        // termos cuyo rango [x, x + termoW) cruza el de las hitboxes. Como el anillo está
+        // ordenado por x, se busca el primer candidato y se corta apenas uno queda a la
+        // derecha. Después, por columna, un solo chequeo en x y el de y por cada vivo.
+        float xMin = hitX(0) - termoW;
+        float xMax = hitX(COLUMNAS_X.length - 1) + hitW;
+
+        for (int i = termos.primeroDespuesDe(xMin); i < termos.cantidad; i++) {
+            int s = termos.slot(i);
+            float x = termos.x[s];
+            if (x >= xMax) break;
+
+            float gap = termos.gapY[s];
+            historial.guardarTermo(paso, x, gap);
+            for (int c = 0; c < COLUMNAS_X.length; c++) {
+                if (!cruzaEnX(x, hitX(c))) continue;
+                for (long m = vivos & columna[c]; m != 0; m &= m - 1) {
+                    int id = Long.numberOfTrailingZeros(m) + 1;
+                    if (fueraDelHueco(gap, y[id])) vivos &= ~(1L << (id - 1));
+                }
             }
 
-            // Si ambos murieron, sigo moviendo el mundo igualmente?
-            // Usted pidió que si uno muere el otro siga. Si ambos mueren, la partida queda "muerta".
+            // Si mueren todos, sigo moviendo el mundo igualmente?
+            // Usted pidió que si uno muere el resto siga. Si mueren todos, la partida queda "muerta".
             // Yo la dejo viva (termos siguen), pero no hay más score. Si no le gusta, lo cortamos.
         }
+
+        for (long m = vivosAntes & ~vivos; m != 0; m &= m - 1) {
+            tickMuerte[Long.numberOfTrailingZeros(m) + 1] = tick;
+        }
     }
 
-    private void spawnTermo() {
-        float halfGap = Constants.TERMO_GAP / 2f;
-        float margin = 10f;
+    // Un salto del buzón, ya en el hilo del paso. El tick que faltaba se resuelve acá y el
+    // recorte de ticks adelantados se hace contra el paso de ahora, no el que vio el receptor.
+    private void recibirSalto(int deLaPartida, int id, int seq, int tickCliente) {
+        if (deLaPartida != partida) return;
+        long bit = 1L << (id - 1);
+        if (seq == 0) {
+            saltosDirectos |= bit;
+            return;
+        }
+        // Un mate recién muerto todavía puede salvarse con un salto atrasado (rebobinar)
+        if (!aceptaSaltos(id)) return;
+        entradas[id].agregar(seq, tickCliente < 0 ? tick : tickCliente, tick);
+    }
 
-        float minCenter = Constants.GROUND_HEIGHT + halfGap + margin;
-        float maxCenter = Constants.VIRTUAL_HEIGHT - halfGap - margin;
+    // Toma el próximo salto de red del jugador id. Si llegó para un tick que ya se simuló
+    // (dentro de la ventana) lo aplica rebobinando y devuelve cuántos ticks; si no, lo deja
+    // para este paso y devuelve 0.
+    private int tomarEntrada(int id) {
+        BufferEntradas e = entradas[id];
+        int seq = e.tomar(tick);
+        if (seq == 0) return 0;
+        seqAplicado[id] = seq;
+
+        int atras = tick - e.tickTomado();
+        if (atras > 0 && atras <= HistorialMundo.VENTANA && rebobinar(id, tick - atras)) {
+            e.contarRebobinada();
+            return atras;
+        }
+        saltosDirectos |= 1L << (id - 1);
+        return 0;
+    }
 
-        float gapY = minCenter + rng.nextFloat() * (maxCenter - minCenter);
+    // Compensación de lag: re-simula el mate id desde el paso desde con el salto atrasado,
+    // juzgando cada paso contra los termos de ese tick (los que vio el cliente), hasta el
+    // tick actual. El resultado reemplaza al estado actual, aunque eso lo reviva; el score
+    // ya contado no se descuenta y el que falte se suma en este mismo paso. El resto del mundo
+    // no cambia. false si ese tick ya no está en el historial o el mate ya estaba muerto.
+    private boolean rebobinar(int id, int desde) {
+        if (!historial.tiene(desde) || !historial.vivo(desde, id)) return false;
+
+        long bit = 1L << (id - 1);
+        historial.marcarSaltos(desde, bit);
+        float my = historial.y(desde, id);
+        float mvy = historial.vy(desde, id);
+
+        boolean vivo = true;
+        for (int t = desde; t < tick; t++) {
+            if (t > desde) {
+                historial.guardarMate(t, id, my, mvy);
+                historial.marcarVivo(t, id, vivo);
+            }
+            if (!vivo) continue;
+            if (historial.salto(t, id)) mvy = Constants.JUMP_VELOCITY;
+            mvy += Constants.GRAVITY * SnapshotFormat.TICK_DT;
+            my += mvy * SnapshotFormat.TICK_DT;
+            vivo = !muereEn(id, my, t);
+            if (!vivo) tickMuerte[id] = t + 1;
+        }
 
-        float startX;
+        y[id] = my;
+        vy[id] = mvy;
+        if (vivo) vivos |= bit; else vivos &= ~bit;
+        return true;
+    }
 
-        if (termos.isEmpty()) {
-            startX = Constants.VIRTUAL_WIDTH + 40f;
-        } else {
-            TermoSim last = termos.get(termos.size() - 1);
-            startX = last.x + TERMO_MIN_DISTANCE;
+    // Suelo/techo y los termos que guardó el historial para el paso t
+    private boolean muereEn(int id, float my, int t) {
+        if (tocaBorde(my)) return true;
+        float hx = hitX(TermoLayout.columna(id));
+        for (int k = 0; k < historial.termos(t); k++) {
+            if (cruzaEnX(historial.termoX(t, k), hx) && fueraDelHueco(historial.termoGap(t, k), my)) return true;
         }
+        return false;
+    }
+
+    private boolean tocaBorde(float my) {
+        return my <= Constants.GROUND_HEIGHT || my + mateH >= Constants.VIRTUAL_HEIGHT;
+    }
+
+    // Borde izquierdo de la hitbox de los mates de la columna c
+    private float hitX(int c) {
+        return COLUMNAS_X[c] + hitPad;
+    }
+
+    // Narrow phase, en dos mitades. Equivale a un AABB overlap contra los dos caños del
+    // termo: como un mate vivo ya pasó el chequeo de suelo/techo, alcanza con ver si su
+    // hitbox se cruza en x con el termo y se sale del hueco en y.
+    private boolean cruzaEnX(float x, float hx) {
+        return x < hx + hitW && x + termoW > hx;
+    }
+
+    private boolean fueraDelHueco(float gap, float my) {
+        float hy = my + hitPad;
+        float halfGap = Constants.TERMO_GAP / 2f;
+        return gap - halfGap > hy || gap + halfGap < hy + hitH;
+    }
 
-        termos.add(new TermoSim(startX, gapY, termoW));
+    private void spawnTermo() {
+        int id = termos.proximoId();
+        termos.agregar(TermoLayout.x(id, tick), TermoLayout.gapCenterY(seed, id));
     }
 
 
 
     String buildState(int tick) {
-        // STATE;tick=10;P1=y,vy,alive,score;P2=y,vy,alive,score;T=x,gap|x,gap|...;
-        StringBuilder sb = new StringBuilder(512);
+        // STATE;tick=10;P1=y,vy,alive,score;P2=y,vy,alive,score;...;T=x,gap|x,gap|...;
+        StringBuilder sb = new StringBuilder(256 + 32 * jugadores);
 
         sb.append("STATE;tick=").append(tick).append(";");
 
-        sb.append("P1=")
-            .append(fmt(p1.y())).append(",")
-            .append(fmt(p1.vy())).append(",")
-            .append(p1Alive ? 1 : 0).append(",")
-            .append(score1).append(";");
-
-        sb.append("P2=")
-            .append(fmt(p2.y())).append(",")
-            .append(fmt(p2.vy())).append(",")
-            .append(p2Alive ? 1 : 0).append(",")
-            .append(score2).append(";");
+        for (int id = 1; id <= jugadores; id++) {
+            sb.append("P").append(id).append("=")
+                .append(fmt(y[id])).append(",")
+                .append(fmt(vy[id])).append(",")
+                .append(isAlive(id) ? 1 : 0).append(",")
+                .append(score[id]).append(";");
+        }
 
         sb.append("T=");
-        for (int i = 0; i < termos.size(); i++) {
-            TermoSim t = termos.get(i);
-            sb.append(fmt(t.x)).append(",").append(fmt(t.gapCenterY));
-            if (i < termos.size() - 1) sb.append("|");
+        for (int i = 0; i < termos.cantidad; i++) {
+            int s = termos.slot(i);
+            sb.append(fmt(termos.x[s])).append(",").append(fmt(termos.gapY[s]));
+            if (i < termos.cantidad - 1) sb.append("|");
         }
         sb.append(";");
 
         return sb.toString();
     }
 
+    // Versión binaria de buildState (ver SnapshotFormat). Escribe en out desde su posición
+    // actual, sin allocar; out debe tener lugar para maxStateBytes().
+    void writeState(int tick, ByteBuffer out) {
+        out.put(SnapshotFormat.MAGIC);
+        out.put(SnapshotFormat.VERSION);
+        out.put(SnapshotFormat.TYPE_FULL);
+        out.putInt(tick);
+
+        out.put((byte) jugadores);
+        for (int id = 1; id <= jugadores; id++) {
+            out.putShort(SnapshotFormat.quantize(y[id]));
+            out.putShort(SnapshotFormat.quantize(vy[id]));
+            out.put(isAlive(id) ? SnapshotFormat.FLAG_ALIVE : 0);
+            out.putShort((short) Math.min(score[id], 0xFFFF));
+            out.putInt(seqAplicado[id]);
+        }
+
+        // Solo los ids: el cliente genera los termos con TermoLayout y el seed
+        out.put((byte) Math.min(termos.cantidad, 255));
+        out.putInt(firstTermoId());
+    }
+
+    // Para la sala más grande posible
+    static int maxStateBytes() {
+        return SnapshotFormat.HEADER_BYTES + 1 + Sala.MAX_JUGADORES * SnapshotFormat.PLAYER_BYTES + 1 + 4;
+    }
+
+    // =========================
+    // Lectura para HistorialSnapshots (ids 1..jugadores)
+    // =========================
+    int firstTermoId() { return termos.primerId; }
+    int nextTermoId() { return termos.proximoId(); }
+    int termoCount() { return termos.cantidad; }
+    int termoId(int i) { return termos.primerId + i; }
+    float termoX(int i) { return termos.x[termos.slot(i)]; }
+    float termoGapY(int i) { return termos.gapY[termos.slot(i)]; }
+
+    float mateY(int id) { return y[id]; }
+    float mateVy(int id) { return vy[id]; }
+    int score(int id) { return score[id]; }
+
     // Formateo más corto para no mandar floats kilométricos
     private static String fmt(float v) {
         return String.format(java.util.Locale.US, "%.2f", v);
@@ -0,0 +1,147 @@
+package red;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+// Administra las salas de un proceso: asigna jugadores a salas con lugar,
+// crea salas nuevas cuando hace falta y recicla las que quedan vacías.
+// Todo se llama bajo el lock de HiloServidorFlappy.
+final class GestorSalas {
+
+    private final int maxSalas;
+    private final int jugadoresPorSala;
+
+    private final List<Sala> activas = new ArrayList<>();
+    private final ArrayDeque<Sala> libres = new ArrayDeque<>();
+
+    // Sala en lobby esperando completar jugadores (la llenamos antes de abrir otra)
+    private Sala esperando = null;
+
+    private int proximoId = 1;
+
+    // Acumulado de salas ya cerradas, para no perder las métricas al reciclar
+    private long ticksCerrados = 0L;
+    private long nsSimCerrados = 0L;
+
+    // Lo que allocó armar cada sala nueva (Sala, GameSim, historiales, buffers), medido con
+    // el contador de allocation del hilo que la creó. Casi todo queda vivo mientras la sala
+    // esté en activas o en el pool, así que es lo que cuesta en heap una sala más.
+    private long bytesSalasMedidas = 0L;
+    private int salasMedidas = 0;
+
+    GestorSalas(int maxSalas, int jugadoresPorSala) {
+        this.maxSalas = maxSalas;
+        this.jugadoresPorSala = jugadoresPorSala;
+    }
+
+    /** Devuelve una sala con slot libre, o null si el server está lleno. */
+    Sala salaConLugar() {
+        if (esperando != null && !esperando.partidaActiva && !esperando.llena()) {
+            return esperando;
+        }
+
+        // Alguna sala en lobby que haya quedado con hueco (ej: se fue un jugador)
+        for (int i = 0; i < activas.size(); i++) {
+            Sala s = activas.get(i);
+            if (!s.partidaActiva && !s.llena()) {
+                esperando = s;
+                return s;
+            }
+        }
+
+        Sala s = salaNueva();
+        if (s != null) esperando = s;
+        return s;
+    }
+
+    /** Sala vacía para un grupo ya armado (matchmaking), o null si el server está lleno. */
+    Sala salaNueva() {
+        if (activas.size() >= maxSalas) return null;
+
+        Sala s = libres.pollFirst();
+        if (s == null) s = crearSala();
+        activas.add(s);
+        return s;
+    }
+
+    /**
+     * Si la sala quedó vacía, la devuelve al pool. Si su worker todavía no la soltó queda
+     * en activas y se vuelve a llamar cuando avise (HiloServidorFlappy#salaSoltada).
+     */
+    void liberarSiVacia(Sala s) {
+        if (!s.vacia() || s.saliendo) return;
+        if (!activas.remove(s)) return; // ya estaba en el pool
+
+        if (esperando == s) esperando = null;
+
+        ticksCerrados += s.ticks;
+        nsSimCerrados += s.nsSim;
+        s.limpiar();
+        libres.addFirst(s);
+    }
+
+    private Sala crearSala() {
+        long antes = bytesAllocados();
+        Sala s = new Sala(proximoId++, jugadoresPorSala);
+        long despues = bytesAllocados();
+        if (antes >= 0L && despues >= antes) {
+            bytesSalasMedidas += despues - antes;
+            salasMedidas++;
+        }
+        return s;
+    }
+
+    // Bytes allocados por este hilo desde que arrancó; -1 si la JVM no los cuenta
+    private static long bytesAllocados() {
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (!(mx instanceof com.sun.management.ThreadMXBean)) return -1L;
+        com.sun.management.ThreadMXBean hs = (com.sun.management.ThreadMXBean) mx;
+        if (!hs.isThreadAllocatedMemorySupported() || !hs.isThreadAllocatedMemoryEnabled()) return -1L;
+        return hs.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    int salasActivas() {
+        return activas.size();
+    }
+
+    int partidasEnJuego() {
+        int n = 0;
+        for (int i = 0; i < activas.size(); i++) {
+            if (activas.get(i).partidaActiva) n++;
+        }
+        return n;
+    }
+
+    // Línea de métricas: costo de CPU por tick de partida, heap usado por todo el proceso
+    // (heapKB: salas, clientes, colas, buffers y la basura que el GC no juntó todavía) y
+    // cuánto allocó en promedio armar una sala (kbPorSala; -1 si todavía no se armó
+    // ninguna o la JVM no lo mide)
+    String resumen() {
+        long ticks = ticksCerrados;
+        long ns = nsSimCerrados;
+        for (int i = 0; i < activas.size(); i++) {
+            Sala s = activas.get(i);
+            ticks += s.ticks;
+            ns += s.nsSim;
+        }
+
+        int salas = activas.size();
+        int enJuego = partidasEnJuego();
+
+        Runtime rt = Runtime.getRuntime();
+        long heapKb = (rt.totalMemory() - rt.freeMemory()) / 1024L;
+
+        StringBuilder sb = new StringBuilder(128);
+        sb.append("salas=").append(salas)
+            .append(" enJuego=").append(enJuego)
+            .append(" pool=").append(libres.size())
+            .append(" ticks=").append(ticks)
+            .append(" usPorTick=").append(ticks == 0 ? 0 : (ns / ticks) / 1000.0)
+            .append(" heapKB=").append(heapKb)
+            .append(" kbPorSala=").append(salasMedidas == 0 ? -1L : bytesSalasMedidas / salasMedidas / 1024L);
+        return sb.toString();
+    }
+}
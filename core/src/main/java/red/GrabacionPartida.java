@@ -0,0 +1,166 @@
+package red;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+// Grabación append-only de una partida: como GameSim es determinístico alcanza con el
+// seed y los saltos de cada tick. La escribe solo el worker que simula la sala, a través
+// de un buffer chico que se baja al FileChannel cuando se llena y al cerrar.
+// ReproductorPartidas la re-ejecuta headless.
+//
+// Formato (big-endian):
+//   int   MAGIC ("FMR3")
+//   long  seed
+//   int   id de sala
+//   long  inicio (epoch ms)
+//   byte  jugadores (capacidad de la sala)
+//   long  presentes al arrancar (bit id-1)
+//   eventos: varint ticks desde el evento anterior (>= 1), varint cantidad de entradas, y
+//            por cada una un byte con el id; si tiene BAJA prendido el jugador se fue antes
+//            de ese paso, si no saltó en ese paso y sigue un varint con los ticks que se lo
+//            rebobinó por llegar atrasado (0 = salto normal)
+//   cierre:  varint 0, int ticks totales, int CRC32 del estado final (hashEstado)
+// Un archivo sin cierre (server caído) se reproduce igual hasta el último evento.
+//
+// Las versiones viejas son de 2 jugadores, sin jugadores/presentes en la cabecera, y cada
+// evento es un byte máscara: bit id-1 = saltó; en "FMR2" bit id+1 = rebobinado, con un
+// varint de ticks hacia atrás por cada uno. ReproductorPartidas las sigue leyendo.
+final class GrabacionPartida {
+
+    static final int MAGIC = 0x464D5233; // "FMR3"
+    static final int MAGIC_V2 = 0x464D5232; // "FMR2"
+    static final int MAGIC_V1 = 0x464D5231; // "FMR1"
+
+    // Byte de id de una entrada
+    static final int BAJA = 0x80;
+
+    // Bits de la máscara de un evento de FMR2
+    static final int BIT_REBOBINADO_P1 = 4;
+    static final int BIT_REBOBINADO_P2 = 8;
+    static final String EXTENSION = ".fmr";
+
+    private static final int BUFFER_BYTES = 4096;
+
+    private final Path archivo;
+    private final FileChannel canal;
+    private final ByteBuffer buf = ByteBuffer.allocate(BUFFER_BYTES);
+    private int ultimoTick = 0;
+
+    private GrabacionPartida(Path archivo, FileChannel canal) {
+        this.archivo = archivo;
+        this.canal = canal;
+    }
+
+    static GrabacionPartida crear(Path dir, int salaId, GameSim sim) throws IOException {
+        long seed = sim.seed();
+        long inicio = System.currentTimeMillis();
+        Files.createDirectories(dir);
+        Path archivo = dir.resolve("sala" + salaId + "-" + inicio + "-" + Long.toHexString(seed) + EXTENSION);
+        FileChannel ch = FileChannel.open(archivo,
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        GrabacionPartida g = new GrabacionPartida(archivo, ch);
+        g.buf.putInt(MAGIC);
+        g.buf.putLong(seed);
+        g.buf.putInt(salaId);
+        g.buf.putLong(inicio);
+        g.buf.put((byte) sim.jugadores());
+        g.buf.putLong(sim.presentes());
+        return g;
+    }
+
+    Path archivo() {
+        return archivo;
+    }
+
+    // Los saltos del paso que acaba de simular sim (se llama después de GameSim#tick)
+    void registrar(GameSim sim) throws IOException {
+        long bajas = sim.bajasUltimoTick();
+        long saltos = sim.saltosUltimoTick();
+        long rebobinados = sim.rebobinados();
+        int n = Long.bitCount(bajas) + Long.bitCount(saltos) + Long.bitCount(rebobinados);
+        if (n == 0) return;
+
+        int tick = sim.tickCount();
+        if (buf.remaining() < 10 + n * 6) bajar();
+        putVarint(buf, tick - ultimoTick);
+        putVarint(buf, n);
+        for (long m = bajas; m != 0; m &= m - 1) {
+            buf.put((byte) (BAJA | (Long.numberOfTrailingZeros(m) + 1)));
+        }
+        for (long m = saltos; m != 0; m &= m - 1) {
+            buf.put((byte) (Long.numberOfTrailingZeros(m) + 1));
+            putVarint(buf, 0);
+        }
+        for (long m = rebobinados; m != 0; m &= m - 1) {
+            int id = Long.numberOfTrailingZeros(m) + 1;
+            buf.put((byte) id);
+            putVarint(buf, sim.rebobinado(id));
+        }
+        ultimoTick = tick;
+    }
+
+    void cerrar(GameSim sim) throws IOException {
+        try {
+            if (buf.remaining() < 9) bajar();
+            putVarint(buf, 0);
+            buf.putInt(sim.tickCount());
+            buf.putInt(hashEstado(sim));
+            bajar();
+        } finally {
+            canal.close();
+        }
+    }
+
+    private void bajar() throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) canal.write(buf);
+        buf.clear();
+    }
+
+    // CRC32 del estado de la simulación (floats sin cuantizar, sin los seq de red que no se
+    // graban): identifica el estado final para comparar reproducciones
+    static int hashEstado(GameSim sim) {
+        int n = sim.termoCount();
+        ByteBuffer b = ByteBuffer.allocate(4 + sim.jugadores() * 13 + 8 + n * 8);
+        b.putInt(sim.tickCount());
+        for (int id = 1; id <= sim.jugadores(); id++) {
+            b.putFloat(sim.mateY(id));
+            b.putFloat(sim.mateVy(id));
+            b.put((byte) (sim.isAlive(id) ? 1 : 0));
+            b.putInt(sim.score(id));
+        }
+        b.putInt(sim.firstTermoId());
+        b.putInt(n);
+        for (int i = 0; i < n; i++) {
+            b.putFloat(sim.termoX(i));
+            b.putFloat(sim.termoGapY(i));
+        }
+        CRC32 crc = new CRC32();
+        crc.update(b.array(), 0, b.position());
+        return (int) crc.getValue();
+    }
+
+    static void putVarint(ByteBuffer b, int v) {
+        while ((v & ~0x7F) != 0) {
+            b.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        b.put((byte) v);
+    }
+
+    static int getVarint(ByteBuffer b) {
+        int v = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int x = b.get();
+            v |= (x & 0x7F) << shift;
+            if ((x & 0x80) == 0) return v;
+        }
+        throw new IllegalStateException("varint corrupto");
+    }
+}
@@ -1,12 +1,16 @@
 package red;
 
-import com.badlogic.Flappy.Constants;
+import com.badlogic.Flappy.SnapshotFormat;
 
 import java.io.IOException;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 public final class HiloServidorFlappy extends Thread {
 
@@ -14,414 +18,946 @@ public final class HiloServidorFlappy extends Thread {
     // Configuración
     // =========================
     private final int puerto;
-    private DatagramSocket socket;
+    private DatagramChannel canal; // el del shard 0: sale todo por acá
+
+    // Sockets de recepción en el mismo puerto (-Dflappy.shards=N, SO_REUSEPORT en Linux)
+    private static final int MAX_SHARDS = 64;
+    private ShardRecepcion[] shards;
+
+    // Buffers de recepción (directos, reusados)
+    private static final int TAM_DATAGRAMA = 1400;
+    private final PoolBuffers buffers = new PoolBuffers(8, TAM_DATAGRAMA);
 
     private static final long TIMEOUT_MS = 5_000L;
-    private static final long TICK_NS = 16_666_666L; // ~60fps
+    private final RuedaTimeouts timeouts = new RuedaTimeouts(TIMEOUT_MS);
+
+    // Tope de partidas simultáneas en este proceso
+    private static final int MAX_SALAS = 512;
+
+    // Jugadores por sala (-Dflappy.jugadores=N, de 2 a Sala.MAX_JUGADORES)
+    private static final int JUGADORES_POR_SALA = leerJugadoresPorSala();
+
+    // Cada cuánto el hilo de timeouts loguea métricas de salas
+    private static final long STATS_MS = 10_000L;
+
+    // Cada cuánto se arman grupos con la cola de matchmaking
+    private static final long EMPAREJAR_MS = 100L;
 
     // Protocolo
     private static final String MSG_HANDSHAKE_IN = "Hello_There";
     private static final String MSG_HANDSHAKE_OUT = "General_Kenobi";
 
     private static final String MSG_CONECTAR = "Conectar";
+    private static final String PREFIX_CONECTAR = "Conectar;"; // Conectar;proto=bin;v=3
     private static final String MSG_CONECTADO = "Conectado";
     private static final String MSG_NO_REGISTRADO = "No_registrado";
 
     private static final String MSG_PING = "PING";
     private static final String MSG_PONG = "PONG";
+    private static final String PREFIX_PONG_HZ = "PONG;hz=";
     private static final String MSG_DISCONNECT = "DISCONNECT";
 
-    private static final String MSG_PARTIDA_INICIADA = "PARTIDA_INICIADA";
+    private static final String PREFIX_PARTIDA_INICIADA = "PARTIDA_INICIADA;seed="; // PARTIDA_INICIADA;seed=-123
     private static final String MSG_PARTIDA_ABORTADA = "PARTIDA_ABORTADA";
 
+    // Matchmaking: QUEUE;proto=bin;v=6;rtt=48;jugador=abc (se repite como keepalive)
+    private static final String MSG_QUEUE = "QUEUE";
+    private static final String PREFIX_QUEUE = "QUEUE;";
+    private static final String PREFIX_EN_COLA = "EN_COLA;espera="; // EN_COLA;espera=1200;cola=14
+
     // Lobby
     private static final String PREFIX_READY = "READY="; // READY=1/0
 
+    // Confirmación de snapshot (base para los delta)
+    private static final String PREFIX_ACK = SnapshotFormat.ACK_PREFIX; // ACK;tick=123
+
     // Input
-    private static final String PREFIX_INPUT = "INPUT;"; // INPUT;jump=1;seq=123
+    private static final String PREFIX_INPUT = "INPUT;"; // INPUT;jump=1;seq=12;tick=340;ant=11@330,10@321
 
     // Errores server->client
     private static final String PREFIX_SERVER_ERROR = "SERVER_ERROR;";
 
+    // Los mismos literales en bytes, para comparar contra lo recibido sin armar Strings
+    private static final byte[] B_HANDSHAKE_IN = MensajeBytes.literal(MSG_HANDSHAKE_IN);
+    private static final byte[] B_CONECTAR = MensajeBytes.literal(MSG_CONECTAR);
+    private static final byte[] B_PREFIX_CONECTAR = MensajeBytes.literal(PREFIX_CONECTAR);
+    private static final byte[] B_QUEUE = MensajeBytes.literal(MSG_QUEUE);
+    private static final byte[] B_PREFIX_QUEUE = MensajeBytes.literal(PREFIX_QUEUE);
+    private static final byte[] B_PING = MensajeBytes.literal(MSG_PING);
+    private static final byte[] B_DISCONNECT = MensajeBytes.literal(MSG_DISCONNECT);
+    private static final byte[] B_PREFIX_READY = MensajeBytes.literal(PREFIX_READY);
+    private static final byte[] B_PREFIX_ACK = MensajeBytes.literal(PREFIX_ACK);
+    private static final byte[] B_PREFIX_INPUT = MensajeBytes.literal(PREFIX_INPUT);
+
+    private static final byte[] B_PROTO_BIN = MensajeBytes.literal("proto=bin");
+    private static final byte[] B_CAMPO_V = MensajeBytes.literal("v=");
+    private static final byte[] B_CAMPO_TICK = MensajeBytes.literal("tick=");
+    private static final byte[] B_JUMP_1 = MensajeBytes.literal("jump=1");
+    private static final byte[] B_CAMPO_SEQ = MensajeBytes.literal("seq=");
+    private static final byte[] B_CAMPO_ANT = MensajeBytes.literal("ant=");
+    private static final byte[] B_CAMPO_RTT = MensajeBytes.literal("rtt=");
+    private static final byte[] B_CAMPO_JUGADOR = MensajeBytes.literal("jugador=");
+
+    // Largo máximo de la clave jugador= (más larga se ignora y vale la IP)
+    private static final int MAX_CLAVE_JUGADOR = 32;
+
     // =========================
     // Estado de clientes
     // =========================
     private final Object lock = new Object();
     private volatile boolean activo = true;
 
-    private final Map<Integer, Cliente> clientes = new ConcurrentHashMap<>();
+    // Clientes indexados por IP:PUERTO
+    private final IndiceClientes clientes = new IndiceClientes(MAX_SALAS * JUGADORES_POR_SALA);
+
+    private final GestorSalas salas = new GestorSalas(MAX_SALAS, JUGADORES_POR_SALA);
+
+    // Matchmaking: quién espera sala y el rating de cada uno
+    private final ColaEmparejamiento cola = new ColaEmparejamiento();
+    private final RatingJugadores ratings = new RatingJugadores();
+
+    // Simulación: un hilo por core para todas las salas
+    private final PlanificadorTicks planificador = new PlanificadorTicks(
+        Runtime.getRuntime().availableProcessors(),
+        new PlanificadorTicks.PasoSala() {
+            @Override public void tick(Sala sala, int worker) { tickSala(sala, worker); }
+            @Override public void finPasada(int worker) { envio.productor(worker).flush(); }
+            @Override public void quitada(Sala sala, int worker) {
+                terminarGrabacion(sala);
+                logEntradas(sala);
+                salaSoltada(sala);
+            }
+        });
 
-    private volatile boolean partidaActiva = false;
-    private Thread hiloSim = null;
+    // Salida de snapshots en lote (una cola por worker de simulación). Cada bloque junta
+    // los snapshots de una sala en un tick: en salas de 2 alcanza uno, en las grandes unos pocos
+    private static final int COLA_ENVIO_POR_WORKER = 8192;
+    private static final int BLOQUE_ENVIO = 4096;
+    private ColaEnvio envio;
 
-    private final GameSim sim = new GameSim();
+    // Directorio de grabaciones de partidas (-Dflappy.grabaciones=dir); null = no se graba
+    private final Path dirGrabaciones = leerDirGrabaciones();
 
     public HiloServidorFlappy(int puerto) {
         super("HiloServidorFlappy-UDP");
         this.puerto = puerto;
         initSocket();
-        startTimeoutCleaner();
+        envio = new ColaEnvio(canal, planificador.hilos(), COLA_ENVIO_POR_WORKER, Math.max(BLOQUE_ENVIO, GameSim.maxStateBytes()));
+        envio.iniciar();
+        planificador.iniciar();
+        startTimeouts();
+        startEmparejamiento();
     }
 
     private void initSocket() {
         try {
-            socket = new DatagramSocket(puerto);
-            socket.setBroadcast(true);
-            LoggerRed.info("SERVER", "Escuchando UDP en " + puerto);
+            int n = leerShards();
+            SocketOption<Boolean> reusePort = n > 1 ? opcionReusePort() : null;
+            if (n > 1 && reusePort == null) {
+                LoggerRed.warn("SERVER", "SO_REUSEPORT no disponible (hace falta Linux y Java 9+): un solo socket");
+                n = 1;
+            }
+
+            ShardRecepcion.Procesador procesador = this::procesarPaquete;
+            shards = new ShardRecepcion[n];
+            int puertoReal = puerto;
+            for (int k = 0; k < n; k++) {
+                DatagramChannel ch = DatagramChannel.open();
+                ch.setOption(StandardSocketOptions.SO_BROADCAST, true);
+                ch.setOption(StandardSocketOptions.SO_RCVBUF, 1 << 20);
+                ch.setOption(StandardSocketOptions.SO_SNDBUF, 1 << 20);
+                if (reusePort != null) ch.setOption(reusePort, true);
+                // Con puerto 0 el primero elige uno y los demás se suman a ese
+                ch.bind(new InetSocketAddress(puertoReal));
+                if (k == 0) puertoReal = ((InetSocketAddress) ch.getLocalAddress()).getPort();
+                shards[k] = new ShardRecepcion(k, ch, buffers, procesador);
+            }
+            for (ShardRecepcion s : shards) s.conectar(n);
+            canal = shards[0].canal;
+
+            LoggerRed.info("SERVER", "Escuchando UDP en " + puertoReal + " (" + JUGADORES_POR_SALA + " jugadores por sala"
+                + (n > 1 ? ", " + n + " sockets con SO_REUSEPORT)" : ")"));
         } catch (Exception e) {
             throw new RuntimeException("No se pudo abrir socket UDP en puerto " + puerto, e);
         }
     }
 
+    private static int leerShards() {
+        int n = Integer.getInteger("flappy.shards", 1);
+        return Math.max(1, Math.min(MAX_SHARDS, n));
+    }
+
+    // SO_REUSEPORT está en StandardSocketOptions desde Java 9 (compilamos para 8) y solo
+    // reparte datagramas entre sockets en Linux. null si no se puede usar.
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> opcionReusePort() {
+        if (!System.getProperty("os.name", "").toLowerCase(Locale.ROOT).contains("linux")) return null;
+        try {
+            SocketOption<Boolean> op = (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+            try (DatagramChannel prueba = DatagramChannel.open()) {
+                return prueba.supportedOptions().contains(op) ? op : null;
+            }
+        } catch (ReflectiveOperationException | IOException e) {
+            return null;
+        }
+    }
+
+    // Shard que procesa los paquetes de los clientes de la sala
+    private int shardDe(Sala sala) {
+        return (sala.id - 1) % shards.length;
+    }
+
     public void apagarServidor(String reason) {
         LoggerRed.warn("SERVER", "Apagando servidor. reason=" + reason);
         activo = false;
-        detenerSimulacion();
-        if (socket != null && !socket.isClosed()) socket.close();
+        planificador.detener();
+        if (envio != null) envio.detener();
+        for (ShardRecepcion s : shards) s.detener();
     }
 
+    // Este hilo recibe por el shard 0; los demás shards tienen el suyo
     @Override
     public void run() {
-        while (activo) {
-            try {
-                byte[] buf = new byte[1400];
-                DatagramPacket p = new DatagramPacket(buf, buf.length);
-                socket.receive(p);
-                procesarPaquete(p);
-            } catch (SocketException se) {
-                if (!activo) break;
-                LoggerRed.error("SOCKET", "SocketException en receive()", se);
-            } catch (Exception e) {
-                LoggerRed.error("SERVER", "Excepción en loop principal", e);
+        for (int k = 1; k < shards.length; k++) {
+            ShardRecepcion s = shards[k];
+            Thread hilo = new Thread(s::correr, "HiloServidorFlappy-UDP-" + k);
+            hilo.setDaemon(true);
+            hilo.start();
+        }
+        shards[0].correr();
+    }
+
+    // Package-private para los benchmarks
+    void procesarPaquete(ByteBuffer msg, InetSocketAddress origen) {
+        procesarPaquete(msg, origen, shards[0]);
+    }
+
+    // Package-private para los benchmarks: saca la sala de su worker sin terminar la partida,
+    // que queda quieta en su tick. Vuelve cuando el worker la soltó: desde ahí el que llama
+    // puede hacer de worker (GameSim#vaciarBuzon, BufferEntradas#tomar).
+    void congelarSala(Sala sala) throws InterruptedException {
+        synchronized (lock) {
+            detenerSimulacion(sala);
+        }
+        while (true) {
+            synchronized (lock) {
+                if (!sala.saliendo) return;
             }
+            Thread.sleep(1);
         }
     }
 
-    private void procesarPaquete(DatagramPacket p) {
-        String msg = new String(p.getData(), 0, p.getLength(), StandardCharsets.UTF_8).trim();
+    // Package-private para los benchmarks (null si no está registrado)
+    Cliente cliente(InetSocketAddress origen) {
+        synchronized (lock) {
+            return clientes.get(origen);
+        }
+    }
 
-        // DEBUG: log de TODO lo que llega (temporal)
-        LoggerRed.info("RECV", "De " + p.getAddress().getHostAddress() + ":" + p.getPort() + " msg=" + msg);
+    private void procesarPaquete(ByteBuffer msg, InetSocketAddress origen, ShardRecepcion shard) {
+        MensajeBytes.trim(msg);
+
+        // DEBUG: log de TODO lo que llega (-Dflappy.log.nivel=DEBUG -Dflappy.log.debug=RECV)
+        if (LoggerRed.isDebug("RECV")) {
+            LoggerRed.debug("RECV", "De {} msg={}", origen, MensajeBytes.texto(msg));
+        }
 
         // 1) Handshake discovery
-        if (MSG_HANDSHAKE_IN.equals(msg)) {
-            enviar(MSG_HANDSHAKE_OUT, p.getAddress(), p.getPort());
+        if (MensajeBytes.igual(msg, B_HANDSHAKE_IN)) {
+            enviar(MSG_HANDSHAKE_OUT, origen);
             return;
         }
 
         // 2) Conectar (registro)
-        if (MSG_CONECTAR.equals(msg)) {
-            registrarCliente(p);
+        if (MensajeBytes.igual(msg, B_CONECTAR)) {
+            registrarCliente(origen, false);
+            return;
+        }
+
+        if (MensajeBytes.empiezaCon(msg, B_PREFIX_CONECTAR)) {
+            registrarCliente(origen, pideBinario(msg));
+            return;
+        }
+
+        // 3) Cola de matchmaking (todavía sin sala)
+        if (MensajeBytes.igual(msg, B_QUEUE) || MensajeBytes.empiezaCon(msg, B_PREFIX_QUEUE)) {
+            manejarCola(msg, origen);
             return;
         }
 
-        // 3) Mensajes solo si está registrado
-        Cliente c = getClienteByPacket(p);
+        // 4) Mensajes solo si está registrado
+        Cliente c = clientes.get(origen);
         if (c == null) {
-            enviar(MSG_NO_REGISTRADO, p.getAddress(), p.getPort());
+            // Se fue de la cola antes de que le tocara sala
+            if (MensajeBytes.igual(msg, B_DISCONNECT) && cola.quitar(origen)) return;
+            enviar(MSG_NO_REGISTRADO, origen);
             return;
         }
 
+        // Con varios sockets, lo de cada sala lo procesa solo el shard dueño
+        if (shards.length > 1) {
+            ShardRecepcion duenio = shards[shardDe(c.sala)];
+            if (duenio != shard) {
+                shard.reenviar(duenio, msg, origen);
+                return;
+            }
+        }
+
         c.ultimoMsgMs = System.currentTimeMillis();
 
-        // 4) Routing simple
-        if (MSG_PING.equals(msg)) {
-            enviar(MSG_PONG, c.ip, c.puerto);
+        // 5) Routing simple
+        if (MensajeBytes.empiezaCon(msg, B_PING)) {
+            // PING;rtt=48: el cliente cuenta el RTT que mide con PING/PONG (ControlTasa) y
+            // se le contesta con la tasa de snapshots que tiene ahora (PONG;hz=30)
+            int rtt = MensajeBytes.campoEntero(msg, B_CAMPO_RTT);
+            if (rtt != MensajeBytes.SIN_NUMERO && rtt >= 0) {
+                c.tasa.rttMs = rtt;
+                enviar(PREFIX_PONG_HZ + c.tasa.hz(), c.direccion);
+            } else {
+                enviar(MSG_PONG, c.direccion);
+            }
             return;
         }
 
-        if (MSG_DISCONNECT.equals(msg)) {
+        if (MensajeBytes.igual(msg, B_DISCONNECT)) {
             manejarDesconexion(c, "client_disconnect");
             return;
         }
 
-        if (msg.startsWith(PREFIX_READY)) {
+        if (MensajeBytes.empiezaCon(msg, B_PREFIX_READY)) {
             manejarReady(c, msg);
             return;
         }
 
-        if (msg.startsWith(PREFIX_INPUT)) {
-            LoggerRed.info("INPUT", "De P" + c.id + " msg=" + msg + " partidaActiva=" + partidaActiva + " alive=" + sim.isAlive(c.id));
-            manejarInput(c, msg);
+        if (MensajeBytes.empiezaCon(msg, B_PREFIX_ACK)) {
+            manejarAck(c, msg);
             return;
         }
 
-
-        if (msg.startsWith(PREFIX_INPUT)) {
+        if (MensajeBytes.empiezaCon(msg, B_PREFIX_INPUT)) {
+            if (LoggerRed.isDebug("INPUT")) {
+                LoggerRed.debug("INPUT", "De {} msg={} alive={}", c.nombre(), MensajeBytes.texto(msg), c.sala.sim.isAlive(c.id));
+            }
             manejarInput(c, msg);
             return;
         }
 
         // Mensaje desconocido (lo logueo para debug)
-        LoggerRed.warn("MSG", "Desconocido de P" + c.id + ": " + msg);
+        LoggerRed.warn("MSG", "Desconocido de " + c.nombre() + ": " + MensajeBytes.texto(msg));
     }
 
     // =========================
     // Registro / Clientes
     // =========================
-    private void registrarCliente(DatagramPacket p) {
+    // Conectar;proto=bin;v=N -> binario si entendemos esa versión; si no, queda en texto
+    private static boolean pideBinario(ByteBuffer msg) {
+        return MensajeBytes.contiene(msg, B_PROTO_BIN)
+            && MensajeBytes.campoEntero(msg, B_CAMPO_V) == SnapshotFormat.VERSION;
+    }
+
+    private void registrarCliente(InetSocketAddress origen, boolean binario) {
         synchronized (lock) {
             // Ya estaba registrado por IP:PUERTO
-            Cliente ya = getClienteByPacket(p);
+            Cliente ya = clientes.get(origen);
             if (ya != null) return;
 
-            int id = obtenerIdDisponible();
-            if (id == -1) {
+            // Si estaba en la cola, prefirió el lobby de siempre
+            cola.quitar(origen);
+
+            Sala sala = salas.salaConLugar();
+            if (sala == null) {
                 // Server full
-                enviar(PREFIX_SERVER_ERROR + "code=FULL;detail=server_full", p.getAddress(), p.getPort());
+                enviar(PREFIX_SERVER_ERROR + "code=FULL;detail=server_full", origen);
                 return;
             }
 
-            Cliente c = new Cliente(id, p.getAddress(), p.getPort());
-            clientes.put(id, c);
+            int id = sala.slotLibre();
+            Cliente c = new Cliente(id, origen, sala, binario);
+            sala.jugadores[id] = c;
+            clientes.put(c);
+            timeouts.agendar(c);
 
-            enviar(MSG_CONECTADO, c.ip, c.puerto);
-            enviar("Registrado con ID " + id, c.ip, c.puerto);
+            enviar(binario ? SnapshotFormat.CONNECTED_BINARY : MSG_CONECTADO, c.direccion);
+            enviar("Registrado con ID " + id, c.direccion);
 
-            LoggerRed.info("JOIN", "Cliente registrado: P" + id + " " + c.ip + ":" + c.puerto);
+            LoggerRed.info("JOIN", "Cliente registrado: " + c.nombre() + " " + c.ip + ":" + c.puerto);
 
             // Sync lobby inicial
-            broadcastLobbyState();
-
-            // Si ya había partida activa, no lo dejo entrar a medio juego (para evitar líos)
-            if (partidaActiva) {
-                enviar(PREFIX_SERVER_ERROR + "code=IN_GAME;detail=match_in_progress", c.ip, c.puerto);
-            }
+            broadcastLobbyState(sala);
         }
     }
 
-    private int obtenerIdDisponible() {
-        boolean p1 = clientes.containsKey(1);
-        boolean p2 = clientes.containsKey(2);
-        if (!p1) return 1;
-        if (!p2) return 2;
-        return -1;
+    // QUEUE;proto=bin;v=6;rtt=48;jugador=abc. Alta en la cola (o renovación si ya estaba);
+    // se contesta con lo que lleva esperando. Si ya tiene sala, el QUEUE es uno atrasado.
+    private void manejarCola(ByteBuffer msg, InetSocketAddress origen) {
+        if (clientes.get(origen) != null) return;
+
+        long ahora = System.currentTimeMillis();
+        String clave = claveJugador(msg, origen);
+        int rtt = MensajeBytes.campoEntero(msg, B_CAMPO_RTT);
+        if (rtt == MensajeBytes.SIN_NUMERO) rtt = -1;
+
+        ColaEmparejamiento.EnCola e = cola.encolar(origen, pideBinario(msg), clave, ratings.de(clave), rtt, ahora);
+        if (e == null) {
+            enviar(PREFIX_SERVER_ERROR + "code=FULL;detail=queue_full", origen);
+            return;
+        }
+        enviar(PREFIX_EN_COLA + (ahora - e.desdeMs) + ";cola=" + cola.tamanio(), origen);
     }
 
-    private Cliente getClienteByPacket(DatagramPacket p) {
-        for (Cliente c : clientes.values()) {
-            if (c.ip.equals(p.getAddress()) && c.puerto == p.getPort()) return c;
+    // jugador=abc si viene y es corto; si no, la IP
+    private static String claveJugador(ByteBuffer msg, InetSocketAddress origen) {
+        int p = MensajeBytes.despuesDe(msg, B_CAMPO_JUGADOR);
+        if (p >= 0) {
+            int fin = p;
+            while (fin < msg.limit() && msg.get(fin) != ';') fin++;
+            if (fin > p && fin - p <= MAX_CLAVE_JUGADOR) {
+                byte[] b = new byte[fin - p];
+                for (int i = 0; i < b.length; i++) b[i] = msg.get(p + i);
+                return new String(b, StandardCharsets.US_ASCII);
+            }
         }
-        return null;
+        return origen.getAddress().getHostAddress();
     }
 
     private void manejarDesconexion(Cliente c, String reason) {
         synchronized (lock) {
-            LoggerRed.warn("LEAVE", "Desconexión: P" + c.id + " reason=" + reason);
-            clientes.remove(c.id);
-            sim.ready[c.id] = false;
-
-            // aborta si estábamos en partida y queda <2
-            if (partidaActiva) {
-                abortarPartida("player_left_" + c.id);
-            } else {
-                broadcastLobbyState();
+            LoggerRed.warn("LEAVE", "Desconexión: " + c.nombre() + " reason=" + reason);
+            quitarCliente(c);
+
+            // aborta si estábamos en partida y no alcanza para seguir sin él
+            Sala sala = c.sala;
+            if (!sala.partidaActiva) {
+                broadcastLobbyState(sala);
+            } else if (!sigueSinLosQueSeFueron(sala)) {
+                abortarPartida(sala, "player_left_" + c.id);
             }
+            salas.liberarSiVacia(sala);
         }
     }
 
+    // Llamar bajo lock
+    private void quitarCliente(Cliente c) {
+        if (!clientes.remove(c)) return;
+        c.registrado = false; // la rueda lo descarta cuando le toque
+        Sala sala = c.sala;
+        if (sala.jugadores[c.id] == c) sala.jugadores[c.id] = null;
+        sala.sim.ready[c.id] = false;
+        // Si la partida sigue, queda muerto desde el próximo paso
+        if (sala.partidaActiva) {
+            ratings.registrar(c.claveRating, sala.sim.score(c.id));
+            sala.sim.eliminar(c.id);
+        }
+    }
+
+    // Llamar bajo lock, con los que se fueron ya quitados. En salas de más de 2 la partida
+    // sigue mientras queden al menos 2; en las de 2 se aborta como siempre.
+    private static boolean sigueSinLosQueSeFueron(Sala sala) {
+        if (sala.capacidad <= Sala.MIN_JUGADORES || sala.cantidad() < Sala.MIN_JUGADORES) return false;
+        LoggerRed.info("GAME", "Sala " + sala.id + " sigue con " + sala.cantidad() + " jugadores");
+        return true;
+    }
+
     // =========================
     // Lobby
     // =========================
-    private void manejarReady(Cliente c, String msg) {
+    private void manejarReady(Cliente c, ByteBuffer msg) {
         // READY=1 o READY=0
-        boolean val = msg.endsWith("1");
-        sim.ready[c.id] = val;
+        boolean val = MensajeBytes.ultimo(msg) == '1';
+        Sala sala = c.sala;
 
-        LoggerRed.info("LOBBY", "P" + c.id + " READY=" + (val ? "1" : "0"));
+        synchronized (lock) {
+            if (sala.jugadores[c.id] != c) return; // ya lo sacaron (timeout/disconnect)
+
+            sala.sim.ready[c.id] = val;
+
+            LoggerRed.info("LOBBY", c.nombre() + " READY=" + (val ? "1" : "0"));
 
-        broadcastLobbyState();
+            broadcastLobbyState(sala);
 
-        // Condición de inicio
-        boolean ambos = clientes.containsKey(1) && clientes.containsKey(2) && sim.ready[1] && sim.ready[2];
-        if (ambos && !partidaActiva) {
-            iniciarPartida();
+            // Condición de inicio
+            if (sala.todosListos() && !sala.partidaActiva) {
+                iniciarPartida(sala);
+            }
         }
     }
 
-    private void broadcastLobbyState() {
-        // LOBBY;READY_P1=0;READY_P2=1
-        String m = "LOBBY;READY_P1=" + (sim.ready[1] ? 1 : 0) + ";READY_P2=" + (sim.ready[2] ? 1 : 0);
-        broadcast(m);
+    private void broadcastLobbyState(Sala sala) {
+        // LOBBY;READY_P1=0;READY_P2=1 (solo los slots ocupados)
+        StringBuilder m = new StringBuilder(16 + 12 * sala.capacidad).append("LOBBY");
+        for (int i = 1; i <= sala.capacidad; i++) {
+            if (sala.jugadores[i] == null) continue;
+            m.append(";READY_P").append(i).append('=').append(sala.sim.ready[i] ? 1 : 0);
+        }
+        broadcast(sala, m.toString());
     }
 
     // =========================
     // Input
     // =========================
-    private void manejarInput(Cliente c, String msg) {
-        // INPUT;jump=1;seq=123
-        // Solo me importa jump=1, y solo si ese jugador está vivo
-        if (!partidaActiva) return;
-
-        if (!sim.isAlive(c.id)) return;
+    private void manejarInput(Cliente c, ByteBuffer msg) {
+        // INPUT;jump=1;seq=12;tick=340;ant=11@330,10@321
+        // seq/tick: el salto nuevo y el tick en que el cliente lo predijo. ant: los anteriores
+        // sin confirmar (seq@tick), repetidos por si se perdió el paquete que los trajo.
+        // Solo me importa jump=1. Si ese jugador todavía puede saltar lo decide el worker al
+        // vaciar el buzón (GameSim#tick): desde acá no se lee estado de la simulación.
+        Sala sala = c.sala;
+        if (!sala.partidaActiva) return;
+        if (!MensajeBytes.contiene(msg, B_JUMP_1)) return;
+
+        int seq = MensajeBytes.campoEntero(msg, B_CAMPO_SEQ);
+        if (seq == MensajeBytes.SIN_NUMERO || seq <= 0) {
+            // Cliente viejo sin seq: salta en el próximo paso
+            sala.sim.queueJump(c.id);
+            return;
+        }
 
-        boolean jump = msg.contains("jump=1");
-        if (jump) {
-            sim.queueJump(c.id);
+        // Sin tick (cliente sin predicción): lo antes posible
+        int tick = MensajeBytes.campoEntero(msg, B_CAMPO_TICK);
+        sala.sim.queueJump(c.id, seq, tick == MensajeBytes.SIN_NUMERO ? GameSim.LO_ANTES_POSIBLE : tick);
+
+        int p = MensajeBytes.despuesDe(msg, B_CAMPO_ANT);
+        while (p >= 0) {
+            int s = MensajeBytes.leerEntero(msg, p);
+            p = MensajeBytes.finEntero(msg, p);
+            if (s == MensajeBytes.SIN_NUMERO || p >= msg.limit() || msg.get(p) != '@') break;
+            int t = MensajeBytes.leerEntero(msg, p + 1);
+            p = MensajeBytes.finEntero(msg, p + 1);
+            if (t == MensajeBytes.SIN_NUMERO) break;
+            if (s > 0) sala.sim.queueJump(c.id, s, t);
+            if (p >= msg.limit() || msg.get(p) != ',') break;
+            p++;
         }
     }
 
+    private void manejarAck(Cliente c, ByteBuffer msg) {
+        // ACK;tick=123
+        int tick = MensajeBytes.campoEntero(msg, B_CAMPO_TICK);
+        if (tick == MensajeBytes.SIN_NUMERO || tick < 0 || tick > c.sala.tick) return;
+        c.tasa.confirmados++; // solo escribe el shard dueño de la sala
+        // Solo avanza; un ACK viejo que llega tarde no sirve de base mejor
+        if (tick > c.ultimoAck) c.ultimoAck = tick;
+    }
+
     // =========================
     // Partida: start/abort/sim
     // =========================
-    private void iniciarPartida() {
-        if (partidaActiva) return;
+    private void iniciarPartida(Sala sala) {
+        if (sala.partidaActiva) return;
+        // El worker de la partida anterior todavía la tiene: arranca cuando la suelte
+        if (sala.saliendo) return;
 
-        LoggerRed.info("GAME", "Iniciando partida.");
+        // Seed por partida: con él (y los saltos) la partida se puede reproducir, y el
+        // cliente genera los termos localmente (TermoLayout)
+        long seed = ThreadLocalRandom.current().nextLong();
+
+        LoggerRed.info("GAME", "Iniciando partida en sala " + sala.id + ". seed=" + seed);
 
         // Reset sim
-        sim.resetForNewMatch();
+        sala.sim.resetForNewMatch(seed, sala.presentes());
+        sala.historial.limpiar();
+        for (Cliente c : sala.jugadores) {
+            if (c == null) continue;
+            c.ultimoAck = -1;
+            c.tasa.reiniciarVentana();
+        }
 
-        partidaActiva = true;
+        sala.partidaActiva = true;
 
-        broadcast(MSG_PARTIDA_INICIADA);
+        broadcast(sala, PREFIX_PARTIDA_INICIADA + seed);
 
-        iniciarSimulacion();
+        iniciarSimulacion(sala);
     }
 
-    private void abortarPartida(String reason) {
-        LoggerRed.warn("GAME", "Abortando partida. reason=" + reason);
+    private void abortarPartida(Sala sala, String reason) {
+        LoggerRed.warn("GAME", "Abortando partida en sala " + sala.id + ". reason=" + reason);
 
-        detenerSimulacion();
-        partidaActiva = false;
+        detenerSimulacion(sala);
+        sala.partidaActiva = false;
+
+        // La partida termina acá para los que quedaron (los que se fueron ya contaron)
+        for (int i = 1; i <= sala.capacidad; i++) {
+            Cliente c = sala.jugadores[i];
+            if (c != null) ratings.registrar(c.claveRating, sala.sim.score(i));
+        }
 
         // Reset lobby state
-        sim.resetLobbyAfterAbort();
+        sala.sim.resetLobbyAfterAbort();
 
-        broadcast(PREFIX_SERVER_ERROR + "code=ABORT;detail=" + reason);
-        broadcast(MSG_PARTIDA_ABORTADA);
-        broadcastLobbyState();
+        broadcast(sala, PREFIX_SERVER_ERROR + "code=ABORT;detail=" + reason);
+        broadcast(sala, MSG_PARTIDA_ABORTADA);
+        broadcastLobbyState(sala);
     }
 
-    private void detenerSimulacion() {
-        if (hiloSim != null) {
-            try {
-                hiloSim.interrupt();
-            } catch (Exception ignored) {}
-            hiloSim = null;
-        }
+    private void detenerSimulacion(Sala sala) {
+        if (planificador.quitar(sala)) sala.saliendo = true;
     }
 
-    private void iniciarSimulacion() {
-        hiloSim = new Thread(() -> {
-            long last = System.nanoTime();
-            long accSpawnMs = 0L;
-            long tick = 0;
+    // Desde el worker, ya sin la sala: recién ahora se puede reciclar o arrancar otra partida
+    private void salaSoltada(Sala sala) {
+        synchronized (lock) {
+            sala.saliendo = false;
+            if (sala.vacia()) {
+                salas.liberarSiVacia(sala);
+            } else if (sala.todosListos()) {
+                iniciarPartida(sala);
+            }
+        }
+    }
 
-            // Para dt estable: aunque haya jitter, clamp
-            while (partidaActiva && activo) {
-                long now = System.nanoTime();
-                long dtNs = now - last;
-                last = now;
+    private void iniciarSimulacion(Sala sala) {
+        sala.tick = 0;
+        planificador.agregar(sala);
+    }
 
-                // dt en segundos
-                float dt = dtNs / 1_000_000_000f;
-                if (dt > 0.05f) dt = 0.05f; // clamp anti-lag
+    // Un paso de simulación de la sala, a dt fijo. Lo llama el worker de PlanificadorTicks.
+    private void tickSala(Sala sala, int worker) {
+        if (!sala.partidaActiva) return;
 
-                // Update sim
-                sim.tick(dt);
+        long t0 = System.nanoTime();
 
-                // Estado a clientes
-                String state = sim.buildState((int) tick);
-                broadcast(state);
+        if (dirGrabaciones != null && sala.sim.tickCount() == 0) empezarGrabacion(sala);
 
-                tick++;
+        // Update sim
+        sala.sim.tick();
 
-                // Sleep para ~60 fps
-                long spent = System.nanoTime() - now;
-                long sleepNs = TICK_NS - spent;
-                if (sleepNs > 0) {
-                    try {
-                        Thread.sleep(sleepNs / 1_000_000L);
-                    } catch (InterruptedException ie) {
-                        break;
-                    }
-                }
+        if (sala.grabacion != null) {
+            try {
+                sala.grabacion.registrar(sala.sim);
+            } catch (IOException e) {
+                LoggerRed.error("GRAB", "Fallo grabando " + sala.grabacion.archivo() + ", se deja de grabar", e);
+                sala.grabacion = null;
             }
+        }
+
+        // Estado a clientes: binario (delta contra su último ACK o completo), texto solo si alguien lo usa
+        if (sala.hayClientes(true)) {
+            sala.historial.registrar(sala.tick, sala.sim);
+            broadcastBinario(sala, envio.productor(worker));
+        }
+        if (sala.hayClientes(false)) {
+            String state = sala.sim.buildState(sala.tick);
+            broadcastTexto(sala, state, envio.productor(worker));
+        }
+
+        sala.tick++;
+
+        sala.nsSim += System.nanoTime() - t0;
+        sala.ticks++;
+    }
+
+    // =========================
+    // Grabación (solo desde el worker de la sala)
+    // =========================
+    private static int leerJugadoresPorSala() {
+        int n = Integer.getInteger("flappy.jugadores", Sala.MIN_JUGADORES);
+        return Math.max(Sala.MIN_JUGADORES, Math.min(Sala.MAX_JUGADORES, n));
+    }
+
+    private static Path leerDirGrabaciones() {
+        String dir = System.getProperty("flappy.grabaciones", "");
+        return dir.trim().isEmpty() ? null : Paths.get(dir.trim());
+    }
 
-            LoggerRed.info("SIM", "Hilo simulación terminado.");
-        }, "ServidorFlappy-Sim");
+    private void empezarGrabacion(Sala sala) {
+        terminarGrabacion(sala);
+        try {
+            sala.grabacion = GrabacionPartida.crear(dirGrabaciones, sala.id, sala.sim);
+        } catch (IOException e) {
+            LoggerRed.error("GRAB", "No se pudo crear la grabación de sala " + sala.id, e);
+        }
+    }
 
-        hiloSim.start();
+    private void terminarGrabacion(Sala sala) {
+        GrabacionPartida g = sala.grabacion;
+        if (g == null) return;
+        sala.grabacion = null;
+        try {
+            g.cerrar(sala.sim);
+            LoggerRed.info("GRAB", "Partida grabada: " + g.archivo() + " ticks=" + sala.sim.tickCount());
+        } catch (IOException e) {
+            LoggerRed.error("GRAB", "Fallo cerrando " + g.archivo(), e);
+        }
+    }
+
+    // Cómo llegaron los saltos de la partida que terminó: duplicadas = reenvíos que ya
+    // estaban, tardías = llegaron después del tick que pidió el cliente, rebobinadas = de
+    // esas, las que se aplicaron en su tick re-simulando (el resto se aplicó tarde),
+    // desbordadas = no entraron en BufferEntradas (ya tenía CAPACIDAD pendientes).
+    // buzonLleno = saltos que no entraron en BuzonEntradas desde que existe la sala.
+    private static void logEntradas(Sala sala) {
+        long descartados = sala.sim.saltosDescartados();
+        if (descartados > 0) LoggerRed.warn("INPUT", "Sala " + sala.id + ": buzonLleno=" + descartados);
+        for (int id = 1; id <= sala.capacidad; id++) {
+            BufferEntradas e = sala.sim.entradas(id);
+            if (e.aplicadas() == 0 && e.duplicadas() == 0 && e.desbordadas() == 0) continue;
+            String linea = "Sala " + sala.id + " P" + id + ": aplicadas=" + e.aplicadas()
+                + " duplicadas=" + e.duplicadas() + " tardias=" + e.tardias()
+                + " rebobinadas=" + e.rebobinadas() + " desbordadas=" + e.desbordadas();
+            if (e.desbordadas() > 0) LoggerRed.warn("INPUT", linea);
+            else LoggerRed.info("INPUT", linea);
+        }
     }
 
     // =========================
-    // Timeout cleaner
+    // Timeouts (RuedaTimeouts)
     // =========================
-    private void startTimeoutCleaner() {
-        Thread cleaner = new Thread(() -> {
+    private void startTimeouts() {
+        Thread hilo = new Thread(() -> {
+            long ultimoStats = System.currentTimeMillis();
+            List<Cliente> vencidos = new ArrayList<>();
+            int ronda = 0;
+
             while (activo) {
+                long now = System.currentTimeMillis();
                 try {
-                    Thread.sleep(1000);
+                    // Despierto al borde del próximo tick de la rueda
+                    Thread.sleep(RuedaTimeouts.RESOLUCION_MS - now % RuedaTimeouts.RESOLUCION_MS);
                 } catch (InterruptedException ignored) {
                     break;
                 }
 
-                long now = System.currentTimeMillis();
-                List<Cliente> caidos = new ArrayList<>();
+                now = System.currentTimeMillis();
+                vencidos.clear();
+                timeouts.avanzar(now, vencidos);
 
-                for (Cliente c : clientes.values()) {
-                    if ((now - c.ultimoMsgMs) > TIMEOUT_MS) {
-                        caidos.add(c);
+                if (!vencidos.isEmpty()) {
+                    ronda++;
+                    synchronized (lock) {
+                        for (Cliente c : vencidos) {
+                            LoggerRed.warn("TIMEOUT", c.nombre() + " timeout (" + TIMEOUT_MS + "ms)");
+                            quitarCliente(c);
+                        }
+
+                        // Cada sala afectada se resuelve una sola vez, con todos sus caídos ya fuera
+                        for (Cliente c : vencidos) {
+                            Sala sala = c.sala;
+                            if (sala.rondaTimeout == ronda) continue;
+                            sala.rondaTimeout = ronda;
+                            if (!sala.partidaActiva) {
+                                if (!sala.vacia()) broadcastLobbyState(sala);
+                            } else if (!sigueSinLosQueSeFueron(sala)) {
+                                abortarPartida(sala, "timeout");
+                            }
+                            salas.liberarSiVacia(sala);
+                        }
                     }
                 }
 
-                if (!caidos.isEmpty()) {
+                if (now - ultimoStats >= STATS_MS) {
+                    ultimoStats = now;
                     synchronized (lock) {
-                        for (Cliente c : caidos) {
-                            LoggerRed.warn("TIMEOUT", "P" + c.id + " timeout (" + TIMEOUT_MS + "ms)");
-                            clientes.remove(c.id);
-                            sim.ready[c.id] = false;
-                        }
-
-                        if (partidaActiva) {
-                            abortarPartida("timeout");
-                        } else {
-                            broadcastLobbyState();
+                        if (salas.salasActivas() > 0 || cola.tamanio() > 0) {
+                            List<Cliente> todos = new ArrayList<>(clientes.size());
+                            clientes.copiarA(todos);
+                            LoggerRed.info("STATS", "clientes=" + clientes.size() + " enRueda=" + timeouts.agendados()
+                                + " " + resumenTasas(todos) + " " + salas.resumen()
+                                + " " + planificador.resumen() + " " + envio.resumen()
+                                + " " + cola.resumen() + " ratings=" + ratings.cantidad()
+                                + " " + resumenShards()
+                                + " logDescartados=" + LoggerRed.descartados());
                         }
                     }
                 }
             }
-        }, "ServidorFlappy-Cleaner");
+        }, "ServidorFlappy-Timeouts");
 
-        cleaner.setDaemon(true);
-        cleaner.start();
+        hilo.setDaemon(true);
+        hilo.start();
     }
 
     // =========================
-    // UDP send helpers
+    // Matchmaking (ColaEmparejamiento)
     // =========================
-    private void enviar(String msg, InetAddress ip, int port) {
-        try {
-            byte[] data = msg.getBytes(StandardCharsets.UTF_8);
-            DatagramPacket p = new DatagramPacket(data, data.length, ip, port);
-            socket.send(p);
-        } catch (IOException ioe) {
-            // no tumbar server por un send fallido
-            LoggerRed.warn("SEND", "Fallo envío a " + ip + ":" + port + " msg=" + msg);
+    private void startEmparejamiento() {
+        Thread hilo = new Thread(() -> {
+            List<ColaEmparejamiento.EnCola[]> grupos = new ArrayList<>();
+
+            while (activo) {
+                try {
+                    Thread.sleep(EMPAREJAR_MS);
+                } catch (InterruptedException ignored) {
+                    break;
+                }
+
+                long now = System.currentTimeMillis();
+                grupos.clear();
+                cola.emparejar(now, JUGADORES_POR_SALA, grupos);
+                if (grupos.isEmpty()) continue;
+
+                // Todos los grupos de la pasada se ubican con una sola toma del lock
+                synchronized (lock) {
+                    for (int g = 0; g < grupos.size(); g++) ubicarGrupo(grupos.get(g), now);
+                }
+            }
+        }, "ServidorFlappy-Matchmaking");
+
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    // Llamar bajo lock. Sala nueva para el grupo: se registran todos, ya listos, y arranca.
+    private void ubicarGrupo(ColaEmparejamiento.EnCola[] grupo, long now) {
+        Sala sala = salas.salaNueva();
+        if (sala == null) {
+            // Server lleno: vuelven a la cola sin perder su lugar
+            cola.devolver(grupo);
+            return;
+        }
+
+        StringBuilder log = new StringBuilder(64);
+        for (ColaEmparejamiento.EnCola e : grupo) {
+            if (clientes.get(e.direccion) != null) continue; // entró por Conectar mientras esperaba
+
+            int id = sala.slotLibre();
+            Cliente c = new Cliente(id, e.direccion, sala, e.binario, e.clave);
+            if (e.rttMs >= 0) c.tasa.rttMs = e.rttMs;
+            sala.jugadores[id] = c;
+            sala.sim.ready[id] = true;
+            clientes.put(c);
+            timeouts.agendar(c);
+
+            enviar(e.binario ? SnapshotFormat.CONNECTED_BINARY : MSG_CONECTADO, c.direccion);
+            enviar("Registrado con ID " + id, c.direccion);
+            log.append(' ').append(c.nombre()).append("(rtt=").append(e.rttMs)
+                .append(",espera=").append(now - e.desdeMs).append(')');
+        }
+        cola.ubicados(grupo, now);
+
+        LoggerRed.info("MATCH", "Sala " + sala.id + ":" + log);
+        if (sala.todosListos()) {
+            iniciarPartida(sala);
+        } else if (!sala.vacia()) {
+            broadcastLobbyState(sala);
+        } else {
+            salas.liberarSiVacia(sala);
         }
     }
 
-    private void broadcast(String msg) {
-        for (Cliente c : clientes.values()) {
-            enviar(msg, c.ip, c.puerto);
+    // udp{0:rx=.. fw=.. in=.. desc=.. | 1:...}
+    private String resumenShards() {
+        StringBuilder sb = new StringBuilder("udp{");
+        for (int k = 0; k < shards.length; k++) {
+            if (k > 0) sb.append(" | ");
+            sb.append(shards[k].resumen());
         }
+        return sb.append('}').toString();
+    }
+
+    // Clientes binarios por tasa de snapshots: tasas=60:n/30:n/20:n
+    private static String resumenTasas(List<Cliente> todos) {
+        int[] n = new int[ControlTasa.DIVISORES.length];
+        for (Cliente c : todos) {
+            if (!c.binario) continue;
+            int hz = c.tasa.hz();
+            for (int k = 0; k < n.length; k++) {
+                if (hz == SnapshotFormat.TICK_RATE / ControlTasa.DIVISORES[k]) n[k]++;
+            }
+        }
+        StringBuilder sb = new StringBuilder("tasas=");
+        for (int k = 0; k < n.length; k++) {
+            if (k > 0) sb.append('/');
+            sb.append(SnapshotFormat.TICK_RATE / ControlTasa.DIVISORES[k]).append(':').append(n[k]);
+        }
+        return sb.toString();
     }
 
     // =========================
-    // Cliente struct
+    // UDP send helpers
     // =========================
-    private static final class Cliente {
-        final int id;
-        final InetAddress ip;
-        final int puerto;
-        volatile long ultimoMsgMs;
-
-        Cliente(int id, InetAddress ip, int puerto) {
-            this.id = id;
-            this.ip = ip;
-            this.puerto = puerto;
-            this.ultimoMsgMs = System.currentTimeMillis();
+    // Mensajes de control. El canal es no bloqueante: con el buffer del socket lleno el
+    // mensaje no sale; se cuenta en ColaEnvio (descControl) y se avisa, sin tumbar el server.
+    private void enviar(String msg, InetSocketAddress destino) {
+        if (!envio.enviarControl(ByteBuffer.wrap(msg.getBytes(StandardCharsets.UTF_8)), destino)) {
+            LoggerRed.warn("SEND", "No salió el envío a " + destino + " msg=" + msg);
+        }
+    }
+
+    // Snapshots binarios: el completo se codifica una vez y se encola a todos los que no
+    // tienen base; los delta van por destinatario, solo con los mates que le importan
+    // (InteresJugadores) y armados con entradas compartidas (HistorialSnapshots).
+    // Todos se escriben uno detrás de otro en el bloque del tick (otro solo si se llena)
+    // y salen juntos cuando el worker termina su pasada (ver ColaEnvio).
+    private void broadcastBinario(Sala sala, ColaEnvio.Productor cola) {
+        int tick = sala.tick;
+        int slot = tick & (HistorialSnapshots.CAPACIDAD - 1);
+        int maximo = GameSim.maxStateBytes();
+        ColaEnvio.Bloque bloque = null;
+        ColaEnvio.Bloque completo = null; // el bloque con el completo, retenido hasta el final
+        int completoDesde = 0;
+        int completoLargo = 0;
+        boolean interesListo = false;
+
+        Cliente[] js = sala.jugadores;
+        for (int i = 1; i < js.length; i++) {
+            Cliente c = js[i];
+            if (c == null || !c.binario) continue;
+            if (!c.tasa.toca(tick, i)) continue;
+            c.tasa.enviado();
+
+            int base = c.ultimoAck;
+            if (sala.historial.sirveDeBase(base, tick)) {
+                if (!interesListo) {
+                    sala.interes.preparar(sala.sim);
+                    interesListo = true;
+                }
+                long enviar = sala.interes.relevantes(c.id, c.vueltaLejanos++);
+                long exactosBase = c.exactos[base & (HistorialSnapshots.CAPACIDAD - 1)];
+
+                bloque = conLugar(bloque, maximo);
+                int desde = bloque.buf.position();
+                c.exactos[slot] = sala.historial.writeDelta(tick, base, c.id, enviar, exactosBase, bloque.buf);
+                cola.encolar(bloque, desde, bloque.buf.position() - desde, c.direccion);
+            } else {
+                // Sin base confirmada: snapshot completo, codificado una sola vez por tick
+                if (completo == null) {
+                    bloque = conLugar(bloque, maximo);
+                    completo = bloque;
+                    envio.retener(completo);
+                    completoDesde = completo.buf.position();
+                    sala.sim.writeState(tick, completo.buf);
+                    completoLargo = completo.buf.position() - completoDesde;
+                }
+                cola.encolar(completo, completoDesde, completoLargo, c.direccion);
+                c.exactos[slot] = -1L;
+            }
+        }
+
+        if (bloque != null) envio.soltar(bloque);
+        if (completo != null) envio.soltar(completo);
+    }
+
+    // b si le quedan al menos largo bytes; si no, suelta b (sus tramos ya encolados lo
+    // mantienen vivo) y toma otro
+    private ColaEnvio.Bloque conLugar(ColaEnvio.Bloque b, int largo) {
+        if (b != null && b.buf.remaining() >= largo) return b;
+        if (b != null) envio.soltar(b);
+        return envio.tomarBloque(largo);
+    }
+
+    // Fallback de texto: el STATE se codifica una vez (es ASCII, byte por char) y se encola
+    // a todos los clientes de texto, igual que los binarios
+    private void broadcastTexto(Sala sala, String msg, ColaEnvio.Productor cola) {
+        ColaEnvio.Bloque b = null;
+        int largo = msg.length();
+        Cliente[] js = sala.jugadores;
+        for (int i = 1; i < js.length; i++) {
+            Cliente c = js[i];
+            if (c == null || c.binario) continue;
+            if (b == null) {
+                b = envio.tomarBloque(largo);
+                for (int k = 0; k < largo; k++) b.buf.put((byte) msg.charAt(k));
+            }
+            cola.encolar(b, 0, largo, c.direccion);
+        }
+        if (b != null) envio.soltar(b);
+    }
+
+    private void broadcast(Sala sala, String msg) {
+        Cliente[] js = sala.jugadores;
+        for (int i = 1; i < js.length; i++) {
+            Cliente c = js[i];
+            if (c != null) enviar(msg, c.direccion);
         }
     }
 }
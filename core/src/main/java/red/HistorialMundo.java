@@ -0,0 +1,96 @@
+package red;
+
+// Últimos pasos de una partida para la compensación de lag. Por cada tick guarda el estado
+// de cada mate al empezar el paso (antes del salto), los saltos que se aplicaron en ese
+// paso y los termos que quedaron en la franja de colisión al terminarlo. Con eso GameSim
+// puede re-simular un mate desde un tick pasado sin tocar el resto del mundo.
+//
+// Todo en arrays primitivos de tamaño fijo, indexados por tick & MASK; lo usa solo el
+// worker de la sala.
+final class HistorialMundo {
+
+    // Ticks hacia atrás que se pueden rebobinar (~200 ms)
+    static final int VENTANA = 12;
+
+    private static final int CAPACIDAD = 16; // potencia de 2, > VENTANA
+    private static final int MASK = CAPACIDAD - 1;
+
+    // Termos que pueden estar en la franja de colisión a la vez (SPACING >> ancho de la franja)
+    static final int TERMOS_POR_TICK = 4;
+
+    private final int jugadores;
+
+    // Qué tick guarda cada slot (-1 = vacío)
+    private final int[] tickDe = new int[CAPACIDAD];
+
+    // [slot * (jugadores + 1) + id], id 1..jugadores. Solo valen para los vivos del slot.
+    private final float[] y;
+    private final float[] vy;
+
+    // Por slot, bit id-1: vivos al empezar el paso y saltos aplicados en el paso
+    private final long[] vivos = new long[CAPACIDAD];
+    private final long[] saltos = new long[CAPACIDAD];
+
+    // [slot * TERMOS_POR_TICK + k]
+    private final float[] termoX = new float[CAPACIDAD * TERMOS_POR_TICK];
+    private final float[] termoGap = new float[CAPACIDAD * TERMOS_POR_TICK];
+    private final byte[] termos = new byte[CAPACIDAD];
+
+    HistorialMundo(int jugadores) {
+        this.jugadores = jugadores;
+        int n = CAPACIDAD * (jugadores + 1);
+        y = new float[n];
+        vy = new float[n];
+        limpiar();
+    }
+
+    void limpiar() {
+        java.util.Arrays.fill(tickDe, -1);
+    }
+
+    // Abre el slot del paso que arranca en tick (pisa el de hace CAPACIDAD ticks)
+    void empezar(int tick, long vivos) {
+        int s = tick & MASK;
+        tickDe[s] = tick;
+        this.vivos[s] = vivos;
+        saltos[s] = 0;
+        termos[s] = 0;
+    }
+
+    boolean tiene(int tick) {
+        return tick >= 0 && tickDe[tick & MASK] == tick;
+    }
+
+    void guardarMate(int tick, int id, float y, float vy) {
+        int i = (tick & MASK) * (jugadores + 1) + id;
+        this.y[i] = y;
+        this.vy[i] = vy;
+    }
+
+    void marcarVivo(int tick, int id, boolean vivo) {
+        long bit = 1L << (id - 1);
+        if (vivo) vivos[tick & MASK] |= bit; else vivos[tick & MASK] &= ~bit;
+    }
+
+    void marcarSaltos(int tick, long mascara) {
+        saltos[tick & MASK] |= mascara;
+    }
+
+    void guardarTermo(int tick, float x, float gap) {
+        int s = tick & MASK;
+        int k = termos[s];
+        if (k == TERMOS_POR_TICK) return;
+        termoX[s * TERMOS_POR_TICK + k] = x;
+        termoGap[s * TERMOS_POR_TICK + k] = gap;
+        termos[s] = (byte) (k + 1);
+    }
+
+    float y(int tick, int id) { return y[(tick & MASK) * (jugadores + 1) + id]; }
+    float vy(int tick, int id) { return vy[(tick & MASK) * (jugadores + 1) + id]; }
+    boolean vivo(int tick, int id) { return (vivos[tick & MASK] & (1L << (id - 1))) != 0; }
+    boolean salto(int tick, int id) { return (saltos[tick & MASK] & (1L << (id - 1))) != 0; }
+
+    int termos(int tick) { return termos[tick & MASK]; }
+    float termoX(int tick, int k) { return termoX[(tick & MASK) * TERMOS_POR_TICK + k]; }
+    float termoGap(int tick, int k) { return termoGap[(tick & MASK) * TERMOS_POR_TICK + k]; }
+}
@@ -0,0 +1,255 @@
+package red;
+
+import com.badlogic.Flappy.SnapshotFormat;
+
+import java.nio.ByteBuffer;
+
+// Lo que se mandó en los últimos CAPACIDAD ticks de una sala, ya cuantizado.
+// Sirve de baseline para los snapshots delta: a cada cliente se le manda solo
+// lo que cambió respecto del último tick que confirmó con ACK.
+// Lo usa solo el worker que simula la sala.
+//
+// En salas grandes cada espectador recibe solo los mates que le importan
+// (InteresJugadores), así que el delta se arma por espectador. Para que eso no cueste
+// jugadores² por tick, la entrada de cada mate contra cada base se codifica una sola vez
+// y se copia a todos los espectadores que confirmaron esa misma base.
+final class HistorialSnapshots {
+
+    static final int CAPACIDAD = 64; // ~1 s a 60 Hz; más viejo que esto va snapshot completo
+
+    private static final int MASK = CAPACIDAD - 1;
+
+    // Entrada de un mate sin seq: mask, y, vy, flags, score
+    private static final int ENTRADA_MAX = 1 + 4 + 1 + 2;
+    private static final int ENTRADA_TODO = SnapshotFormat.DELTA_POS | SnapshotFormat.DELTA_FLAGS | SnapshotFormat.DELTA_SCORE;
+
+    // Bases distintas por tick con entradas codificadas (los clientes con RTT parecido
+    // confirman casi todos la misma)
+    private static final int BASES_CACHE = 4;
+
+    private final int jugadores;
+    private final long todos;
+
+    private final int[] tickDe = new int[CAPACIDAD];
+    private final int[] primerTermo = new int[CAPACIDAD];
+    private final int[] proximoTermo = new int[CAPACIDAD];
+
+    // [slot * jugadores + (id - 1)]
+    private final short[] y;
+    private final short[] vy;
+    private final byte[] flags;
+    private final short[] score;
+    private final int[] seq;
+
+    // Entradas ya codificadas para el tick cacheTick: contra cada base de cacheBase
+    // (sinCambio = mates iguales a la base; hechas = entradas ya escritas en delta) y
+    // completas (todos los campos, para el que no tiene al mate exacto en su base).
+    // [(base * jugadores + (id - 1)) * ENTRADA_MAX] / [(id - 1) * ENTRADA_MAX]
+    private int cacheTick = -1;
+    private int proximaBase;
+    private final int[] cacheBase = new int[BASES_CACHE];
+    private final long[] sinCambio = new long[BASES_CACHE];
+    private final long[] hechas = new long[BASES_CACHE];
+    private final byte[] delta;
+    private final byte[] completa;
+    private long completasHechas;
+
+    HistorialSnapshots(int jugadores) {
+        this.jugadores = jugadores;
+        this.todos = jugadores == 64 ? -1L : (1L << jugadores) - 1;
+        this.delta = new byte[BASES_CACHE * jugadores * ENTRADA_MAX];
+        this.completa = new byte[jugadores * ENTRADA_MAX];
+        this.y = new short[CAPACIDAD * jugadores];
+        this.vy = new short[CAPACIDAD * jugadores];
+        this.flags = new byte[CAPACIDAD * jugadores];
+        this.score = new short[CAPACIDAD * jugadores];
+        this.seq = new int[CAPACIDAD * jugadores];
+        limpiar();
+    }
+
+    void limpiar() {
+        java.util.Arrays.fill(tickDe, -1);
+        limpiarCache();
+    }
+
+    // Descarta las entradas codificadas (al limpiar, y en benchmarks que re-codifican un tick)
+    void limpiarCache() {
+        cacheTick = -1;
+    }
+
+    void registrar(int tick, GameSim sim) {
+        int slot = tick & MASK;
+        tickDe[slot] = tick;
+        primerTermo[slot] = sim.firstTermoId();
+        proximoTermo[slot] = sim.nextTermoId();
+
+        int base = slot * jugadores;
+        for (int j = 0; j < jugadores; j++) {
+            int id = j + 1;
+            y[base + j] = SnapshotFormat.quantize(sim.mateY(id));
+            vy[base + j] = SnapshotFormat.quantize(sim.mateVy(id));
+            flags[base + j] = sim.isAlive(id) ? SnapshotFormat.FLAG_ALIVE : 0;
+            score[base + j] = (short) Math.min(sim.score(id), 0xFFFF);
+            seq[base + j] = sim.lastInputSeq(id);
+        }
+    }
+
+    /** true si se puede mandar un delta de tick contra baseTick. */
+    boolean sirveDeBase(int baseTick, int tick) {
+        int d = tick - baseTick;
+        return baseTick >= 0 && d > 0 && d < CAPACIDAD && tickDe[baseTick & MASK] == baseTick;
+    }
+
+    // Delta de tick (ya registrado) contra baseTick para el espectador propio (ver
+    // SnapshotFormat.TYPE_DELTA). enviar = mates que van en este snapshot; exactosBase =
+    // los que el cliente tiene exactos en baseTick (los demás le quedaron viejos). Devuelve
+    // los que va a tener exactos en tick. El seq solo va para el propio: es para que
+    // reconcilie su predicción, a los demás no les sirve.
+    long writeDelta(int tick, int baseTick, int propio, long enviar, long exactosBase, ByteBuffer out) {
+        int s = tick & MASK;
+        int b = baseTick & MASK;
+        int c = base(tick, baseTick);
+
+        enviar &= todos;
+        exactosBase &= todos;
+        long iguales = exactosBase & sinCambio[c];
+
+        // Los que no tiene exactos van completos; los exactos, solo si cambiaron
+        long conEntrada = enviar & ~iguales;
+        int maskPropio = 0;
+        if (propio > 0) {
+            long bit = 1L << (propio - 1);
+            int j = propio - 1;
+            maskPropio = (exactosBase & bit) == 0
+                ? ENTRADA_TODO | SnapshotFormat.DELTA_SEQ
+                : mascara(s * jugadores + j, b * jugadores + j, true);
+            if (maskPropio != 0) conEntrada |= bit; else conEntrada &= ~bit;
+            enviar |= bit;
+        }
+        long viejos = todos & ~enviar & ~iguales;
+
+        out.put(SnapshotFormat.MAGIC);
+        out.put(SnapshotFormat.VERSION);
+        out.put(SnapshotFormat.TYPE_DELTA);
+        out.putInt(tick);
+        out.put((byte) (tick - baseTick));
+
+        out.put((byte) jugadores);
+        putBits(out, conEntrada);
+        putBits(out, viejos);
+        for (long m = conEntrada; m != 0; m &= m - 1) {
+            int j = Long.numberOfTrailingZeros(m);
+            if (j + 1 == propio) {
+                putEntrada(out, s * jugadores + j, maskPropio);
+            } else if ((exactosBase & (1L << j)) != 0) {
+                int p = entradaDelta(c, s, b, j);
+                out.put(delta, p, largo(delta[p]));
+            } else {
+                int p = entradaCompleta(s, j);
+                out.put(completa, p, largo(completa[p]));
+            }
+        }
+
+        // Despawns: los termos salen siempre por la cabeza
+        out.put((byte) (primerTermo[s] - primerTermo[b]));
+
+        // Spawns: ids [proximoTermo(base), proximoTermo(tick)); el cliente los genera
+        out.put((byte) (proximoTermo[s] - proximoTermo[b]));
+        return todos & ~viejos;
+    }
+
+    // Slot del cache de entradas para (tick, baseTick). El primer espectador con esa base
+    // en este tick paga la comparación de todos los mates; los demás la reusan.
+    private int base(int tick, int baseTick) {
+        if (tick != cacheTick) {
+            cacheTick = tick;
+            java.util.Arrays.fill(cacheBase, -1);
+            completasHechas = 0L;
+            proximaBase = 0;
+        }
+        for (int c = 0; c < BASES_CACHE; c++) {
+            if (cacheBase[c] == baseTick) return c;
+        }
+
+        int c = proximaBase;
+        proximaBase = (proximaBase + 1) % BASES_CACHE;
+        cacheBase[c] = baseTick;
+        hechas[c] = 0L;
+
+        int s = (tick & MASK) * jugadores;
+        int b = (baseTick & MASK) * jugadores;
+        long iguales = 0L;
+        for (int j = 0; j < jugadores; j++) {
+            if (mascara(s + j, b + j, false) == 0) iguales |= 1L << j;
+        }
+        sinCambio[c] = iguales;
+        return c;
+    }
+
+    private int entradaDelta(int c, int s, int b, int j) {
+        int p = (c * jugadores + j) * ENTRADA_MAX;
+        if ((hechas[c] & (1L << j)) == 0) {
+            int i = s * jugadores + j;
+            escribir(delta, p, i, mascara(i, b * jugadores + j, false));
+            hechas[c] |= 1L << j;
+        }
+        return p;
+    }
+
+    private int entradaCompleta(int s, int j) {
+        int p = j * ENTRADA_MAX;
+        if ((completasHechas & (1L << j)) == 0) {
+            escribir(completa, p, s * jugadores + j, ENTRADA_TODO);
+            completasHechas |= 1L << j;
+        }
+        return p;
+    }
+
+    // Qué cambió entre los índices i (tick) y k (base)
+    private int mascara(int i, int k, boolean conSeq) {
+        int mask = 0;
+        if (y[i] != y[k] || vy[i] != vy[k]) mask |= SnapshotFormat.DELTA_POS;
+        if (flags[i] != flags[k]) mask |= SnapshotFormat.DELTA_FLAGS;
+        if (score[i] != score[k]) mask |= SnapshotFormat.DELTA_SCORE;
+        if (conSeq && seq[i] != seq[k]) mask |= SnapshotFormat.DELTA_SEQ;
+        return mask;
+    }
+
+    private void escribir(byte[] a, int p, int i, int mask) {
+        a[p++] = (byte) mask;
+        if ((mask & SnapshotFormat.DELTA_POS) != 0) {
+            p = putShort(a, p, y[i]);
+            p = putShort(a, p, vy[i]);
+        }
+        if ((mask & SnapshotFormat.DELTA_FLAGS) != 0) a[p++] = flags[i];
+        if ((mask & SnapshotFormat.DELTA_SCORE) != 0) putShort(a, p, score[i]);
+    }
+
+    private void putEntrada(ByteBuffer out, int i, int mask) {
+        out.put((byte) mask);
+        if ((mask & SnapshotFormat.DELTA_POS) != 0) {
+            out.putShort(y[i]);
+            out.putShort(vy[i]);
+        }
+        if ((mask & SnapshotFormat.DELTA_FLAGS) != 0) out.put(flags[i]);
+        if ((mask & SnapshotFormat.DELTA_SCORE) != 0) out.putShort(score[i]);
+        if ((mask & SnapshotFormat.DELTA_SEQ) != 0) out.putInt(seq[i]);
+    }
+
+    // Un bit por jugador (bit id-1), de a 8 por byte empezando por el id 1
+    private void putBits(ByteBuffer out, long m) {
+        for (int k = 0; k < jugadores; k += 8) out.put((byte) (m >>> k));
+    }
+
+    private static int largo(byte mask) {
+        return 1 + ((mask & SnapshotFormat.DELTA_POS) != 0 ? 4 : 0)
+            + ((mask & SnapshotFormat.DELTA_FLAGS) != 0 ? 1 : 0)
+            + ((mask & SnapshotFormat.DELTA_SCORE) != 0 ? 2 : 0);
+    }
+
+    private static int putShort(byte[] a, int p, short v) {
+        a[p] = (byte) (v >> 8);
+        a[p + 1] = (byte) v;
+        return p + 2;
+    }
+}
@@ -0,0 +1,207 @@
+package red;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+// Clientes por dirección de socket. Para IPv4 la clave es un long (ip << 16 | puerto)
+// en una tabla de direccionamiento abierto, sin allocar por búsqueda; IPv6 cae a un HashMap.
+// Las escrituras van con lock de escritura; las lecturas (una por paquete) son optimistas.
+final class IndiceClientes {
+
+    // Inet4Address.hashCode() es la dirección como int (así desde siempre en el JDK);
+    // usarlo evita el byte[] que copia getAddress(). Se verifica al cargar la clase.
+    private static final boolean HASH_ES_IP = verificarHashIp();
+
+    private static final long VACIO = 0L; // 0.0.0.0:0 nunca es un origen válido
+
+    private final StampedLock sl = new StampedLock();
+
+    private long[] claves;
+    private Cliente[] valores;
+    private int mask;
+    private int ocupados;
+
+    private final HashMap<InetSocketAddress, Cliente> otros = new HashMap<>();
+
+    IndiceClientes(int capacidadInicial) {
+        int cap = Integer.highestOneBit(Math.max(16, capacidadInicial) - 1) << 2;
+        claves = new long[cap];
+        valores = new Cliente[cap];
+        mask = cap - 1;
+    }
+
+    // =========================
+    // Claves
+    // =========================
+    static long clave(InetSocketAddress dir) {
+        InetAddress a = dir.getAddress();
+        if (!(a instanceof Inet4Address)) return VACIO;
+        return ((ipv4(a) & 0xFFFFFFFFL) << 16) | (dir.getPort() & 0xFFFF);
+    }
+
+    private static int ipv4(InetAddress a) {
+        if (HASH_ES_IP) return a.hashCode();
+        byte[] b = a.getAddress();
+        return ((b[0] & 0xFF) << 24) | ((b[1] & 0xFF) << 16) | ((b[2] & 0xFF) << 8) | (b[3] & 0xFF);
+    }
+
+    private static boolean verificarHashIp() {
+        try {
+            InetAddress a = InetAddress.getByAddress(new byte[] {10, 20, 30, 40});
+            return a.hashCode() == ((10 << 24) | (20 << 16) | (30 << 8) | 40);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static int hash(long k) {
+        long h = k * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    // =========================
+    // Lectura (hot path)
+    // =========================
+    Cliente get(InetSocketAddress dir) {
+        long k = clave(dir);
+        if (k == VACIO) {
+            long st = sl.readLock();
+            try {
+                return otros.get(dir);
+            } finally {
+                sl.unlockRead(st);
+            }
+        }
+
+        long st = sl.tryOptimisticRead();
+        Cliente c = buscar(k);
+        if (sl.validate(st)) return c;
+
+        st = sl.readLock();
+        try {
+            return buscar(k);
+        } finally {
+            sl.unlockRead(st);
+        }
+    }
+
+    private Cliente buscar(long k) {
+        long[] ks = claves;
+        Cliente[] vs = valores;
+        if (vs.length != ks.length) return null; // agrandando: validate() va a fallar
+        int m = ks.length - 1;
+        // Lectura optimista: si una escritura cambia las tablas en el medio, validate() falla
+        // y se repite; el tope de vueltas evita quedar girando sobre un estado a medio escribir.
+        for (int i = hash(k) & m, n = 0; n <= m; i = (i + 1) & m, n++) {
+            long x = ks[i];
+            if (x == k) return vs[i];
+            if (x == VACIO) return null;
+        }
+        return null;
+    }
+
+    // =========================
+    // Escritura (registro / timeout / desconexión)
+    // =========================
+    void put(Cliente c) {
+        long k = clave(c.direccion);
+        long st = sl.writeLock();
+        try {
+            if (k == VACIO) {
+                otros.put(c.direccion, c);
+                return;
+            }
+            if ((ocupados + 1) * 2 > claves.length) agrandar();
+            insertar(k, c);
+        } finally {
+            sl.unlockWrite(st);
+        }
+    }
+
+    // Saca a c solo si sigue siendo el dueño de su dirección (no a uno que se reconectó)
+    boolean remove(Cliente c) {
+        long k = clave(c.direccion);
+        long st = sl.writeLock();
+        try {
+            if (k == VACIO) return otros.remove(c.direccion, c);
+
+            for (int i = hash(k) & mask; ; i = (i + 1) & mask) {
+                long x = claves[i];
+                if (x == VACIO) return false;
+                if (x == k) {
+                    if (valores[i] != c) return false;
+                    borrar(i);
+                    ocupados--;
+                    return true;
+                }
+            }
+        } finally {
+            sl.unlockWrite(st);
+        }
+    }
+
+    int size() {
+        long st = sl.readLock();
+        try {
+            return ocupados + otros.size();
+        } finally {
+            sl.unlockRead(st);
+        }
+    }
+
+    void copiarA(List<Cliente> out) {
+        long st = sl.readLock();
+        try {
+            for (int i = 0; i < valores.length; i++) {
+                if (claves[i] != VACIO) out.add(valores[i]);
+            }
+            out.addAll(otros.values());
+        } finally {
+            sl.unlockRead(st);
+        }
+    }
+
+    private void insertar(long k, Cliente c) {
+        int i = hash(k) & mask;
+        while (claves[i] != VACIO && claves[i] != k) i = (i + 1) & mask;
+        if (claves[i] == VACIO) ocupados++;
+        claves[i] = k;
+        valores[i] = c;
+    }
+
+    // Borrado con corrimiento hacia atrás (sin lápidas), para que las búsquedas sigan cortando en VACIO
+    private void borrar(int i) {
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            long kj = claves[j];
+            if (kj == VACIO) break;
+            int ideal = hash(kj) & mask;
+            // ¿kj puede quedarse donde está, o tiene que pasar al hueco i?
+            boolean mover = (j > i) ? (ideal <= i || ideal > j) : (ideal <= i && ideal > j);
+            if (mover) {
+                claves[i] = kj;
+                valores[i] = valores[j];
+                i = j;
+            }
+        }
+        claves[i] = VACIO;
+        valores[i] = null;
+    }
+
+    private void agrandar() {
+        long[] ks = claves;
+        Cliente[] vs = valores;
+        claves = new long[ks.length * 2];
+        valores = new Cliente[ks.length * 2];
+        mask = claves.length - 1;
+        ocupados = 0;
+        for (int i = 0; i < ks.length; i++) {
+            if (ks[i] != VACIO) insertar(ks[i], vs[i]);
+        }
+    }
+}
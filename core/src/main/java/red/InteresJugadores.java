@@ -0,0 +1,96 @@
+package red;
+
+// Qué mates le importan a cada espectador de una sala grande. El propio, los primeros del
+// ranking, los más cercanos en y (vuelan en la misma franja, son los que se ven al lado)
+// y los muertos (no cambian, así que no cuestan nada) van en cada snapshot; el resto se
+// refresca de a grupos cada REFRESCO_LEJANOS snapshots y el cliente los extrapola en el
+// medio (vuelan en balística salvo cuando saltan).
+//
+// Lo compartido (ranking y orden por y) se calcula una vez por tick en preparar(); lo de
+// cada espectador cuesta O(CERCANOS). Lo usa solo el worker de la sala.
+final class InteresJugadores {
+
+    static final int TOP = 3;
+    static final int CERCANOS = 4;
+    static final float RADIO_CERCA = 200f; // px en y
+    static final int REFRESCO_LEJANOS = 6; // snapshots (10 Hz a 60 Hz)
+
+    private final int jugadores;
+
+    // Vivos ordenados por y, y la posición de cada id en ese orden (-1 = muerto)
+    private final int[] porY;
+    private final int[] rango;
+    private final float[] y;
+    private int vivos;
+
+    private long top;
+    private long muertos;
+
+    // Grupo de lejanos que se refresca en cada vuelta (bit id-1)
+    private final long[] grupo = new long[REFRESCO_LEJANOS];
+
+    InteresJugadores(int jugadores) {
+        this.jugadores = jugadores;
+        this.porY = new int[jugadores];
+        this.rango = new int[jugadores + 1];
+        this.y = new float[jugadores + 1];
+        for (int id = 1; id <= jugadores; id++) grupo[id % REFRESCO_LEJANOS] |= 1L << (id - 1);
+    }
+
+    // Una vez por tick, antes de armar los snapshots
+    void preparar(GameSim sim) {
+        vivos = 0;
+        muertos = 0L;
+        for (int id = 1; id <= jugadores; id++) {
+            rango[id] = -1;
+            if (!sim.isAlive(id)) {
+                muertos |= 1L << (id - 1);
+                continue;
+            }
+            float yi = sim.mateY(id);
+            y[id] = yi;
+
+            // Inserción ordenada: casi siempre hay pocos vivos y cambian poco de orden
+            int k = vivos++;
+            while (k > 0 && y[porY[k - 1]] > yi) {
+                porY[k] = porY[k - 1];
+                k--;
+            }
+            porY[k] = id;
+        }
+        for (int k = 0; k < vivos; k++) rango[porY[k]] = k;
+
+        // Ranking: los TOP de más score entre los vivos (empate: el id más bajo)
+        top = 0L;
+        for (int t = 0; t < TOP && t < vivos; t++) {
+            int mejor = -1;
+            for (int id = 1; id <= jugadores; id++) {
+                if (rango[id] < 0 || (top & (1L << (id - 1))) != 0) continue;
+                if (mejor < 0 || sim.score(id) > sim.score(mejor)) mejor = id;
+            }
+            top |= 1L << (mejor - 1);
+        }
+    }
+
+    // Mates que van en el snapshot de este espectador. vuelta cuenta los snapshots que ya
+    // se le mandaron, para rotar el grupo de lejanos.
+    long relevantes(int id, int vuelta) {
+        long m = (1L << (id - 1)) | top | muertos | grupo[vuelta % REFRESCO_LEJANOS];
+
+        int r = rango[id];
+        if (r < 0) return m;
+
+        // Los CERCANOS más próximos en y: dos punteros desde su posición en porY
+        float yi = y[id];
+        int abajo = r - 1;
+        int arriba = r + 1;
+        for (int n = 0; n < CERCANOS; n++) {
+            float da = abajo >= 0 ? yi - y[porY[abajo]] : Float.MAX_VALUE;
+            float du = arriba < vivos ? y[porY[arriba]] - yi : Float.MAX_VALUE;
+            if (Math.min(da, du) > RADIO_CERCA) break;
+            if (da <= du) m |= 1L << (porY[abajo--] - 1);
+            else m |= 1L << (porY[arriba++] - 1);
+        }
+        return m;
+    }
+}
@@ -1,32 +1,293 @@
 package red;
 
+import java.io.PrintStream;
 import java.text.SimpleDateFormat;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
+// Logger asíncrono: quien loguea solo copia tag/mensaje/args a un ring buffer preallocado
+// y sigue; un hilo daemon arma las líneas y las escribe. Si el ring se llena se descarta
+// (y se cuenta) antes que frenar al que loguea.
+//
+// Configuración por system properties:
+//   flappy.log.nivel=DEBUG|INFO|WARN|ERROR   (default INFO)
+//   flappy.log.debug=RECV,INPUT              (tags con DEBUG; vacío = todos si nivel=DEBUG)
+//   flappy.log.maxPorSeg=50                  (líneas por segundo por tag, salvo ERROR; 0 = sin límite)
+//
+// En el hot path: if (LoggerRed.isDebug("RECV")) LoggerRed.debug("RECV", "De {} msg={}", a, b);
+// Los {} se reemplazan recién en el hilo del logger.
 public final class LoggerRed {
 
-    private static final SimpleDateFormat SDF = new SimpleDateFormat("HH:mm:ss.SSS");
+    public static final int DEBUG = 0;
+    public static final int INFO = 1;
+    public static final int WARN = 2;
+    public static final int ERROR = 3;
+
+    private static final String[] ETIQUETA = {"[DBG ]", "[INFO]", "[WARN]", "[ERR ]"};
+
+    private static final int CAPACIDAD = 8192;
+    private static final int MASK = CAPACIDAD - 1;
+
+    private static volatile int nivel = parseNivel(System.getProperty("flappy.log.nivel", "INFO"));
+    private static final Set<String> tagsDebug = parseTags(System.getProperty("flappy.log.debug", ""));
+    private static final int maxPorSeg = Integer.getInteger("flappy.log.maxPorSeg", 50);
+
+    // Ring multi-productor / un consumidor
+    private static final Entrada[] ring = new Entrada[CAPACIDAD];
+    private static final AtomicLong cursor = new AtomicLong();
+    private static volatile long consumido = 0L;
+
+    private static final AtomicLong descartados = new AtomicLong();
+    private static final ConcurrentHashMap<String, Limite> limites = new ConcurrentHashMap<>();
+
+    private static final Thread hilo;
+
+    static {
+        for (int i = 0; i < CAPACIDAD; i++) ring[i] = new Entrada();
+
+        hilo = new Thread(LoggerRed::loop, "LoggerRed");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
 
     private LoggerRed() {}
 
+    // =========================
+    // API
+    // =========================
+    public static boolean isDebug(String tag) {
+        return nivel <= DEBUG && (tagsDebug.isEmpty() || tagsDebug.contains(tag));
+    }
+
+    public static boolean isEnabled(int lvl) {
+        return lvl >= nivel;
+    }
+
+    public static void setNivel(int lvl) {
+        nivel = lvl;
+    }
+
+    public static void debug(String tag, String plantilla, Object a) {
+        if (isDebug(tag)) publicar(DEBUG, tag, plantilla, 1, a, null, null, null);
+    }
+
+    public static void debug(String tag, String plantilla, Object a, Object b) {
+        if (isDebug(tag)) publicar(DEBUG, tag, plantilla, 2, a, b, null, null);
+    }
+
+    public static void debug(String tag, String plantilla, Object a, Object b, Object c) {
+        if (isDebug(tag)) publicar(DEBUG, tag, plantilla, 3, a, b, c, null);
+    }
+
     public static void info(String tag, String msg) {
-        System.out.println(ts() + " [INFO] [" + tag + "] " + msg);
+        if (isEnabled(INFO)) publicar(INFO, tag, msg, 0, null, null, null, null);
     }
 
     public static void warn(String tag, String msg) {
-        System.out.println(ts() + " [WARN] [" + tag + "] " + msg);
+        if (isEnabled(WARN)) publicar(WARN, tag, msg, 0, null, null, null, null);
     }
 
     public static void error(String tag, String msg) {
-        System.err.println(ts() + " [ERR ] [" + tag + "] " + msg);
+        publicar(ERROR, tag, msg, 0, null, null, null, null);
     }
 
     public static void error(String tag, String msg, Throwable t) {
-        error(tag, msg);
-        if (t != null) t.printStackTrace();
+        publicar(ERROR, tag, msg, 0, null, null, null, t);
+    }
+
+    public static long descartados() {
+        return descartados.get();
+    }
+
+    // Espera (con tope) a que se escriba todo lo encolado. Para el shutdown.
+    public static void flush(long maxMs) {
+        long fin = System.currentTimeMillis() + maxMs;
+        while (consumido < cursor.get() && System.currentTimeMillis() < fin) {
+            LockSupport.unpark(hilo);
+            LockSupport.parkNanos(1_000_000L);
+        }
+    }
+
+    // =========================
+    // Productores
+    // =========================
+    private static void publicar(int lvl, String tag, String plantilla, int nargs, Object a, Object b, Object c, Throwable t) {
+        long ahora = System.currentTimeMillis();
+        // Los ERROR no pasan por el límite: una ráfaga de avisos del mismo tag no los tapa
+        if (lvl < ERROR && !permitido(tag, ahora)) return;
+
+        long s;
+        do {
+            s = cursor.get();
+            if (s - consumido >= CAPACIDAD) {
+                descartados.incrementAndGet();
+                return;
+            }
+        } while (!cursor.compareAndSet(s, s + 1));
+
+        Entrada e = ring[(int) (s & MASK)];
+        e.ms = ahora;
+        e.nivel = lvl;
+        e.tag = tag;
+        e.plantilla = plantilla;
+        e.nargs = nargs;
+        e.a = a;
+        e.b = b;
+        e.c = c;
+        e.t = t;
+        e.seq = s; // publica
+
+        if (lvl >= WARN) LockSupport.unpark(hilo);
+    }
+
+    // Límite de líneas por segundo por tag. Cuenta lo suprimido para avisarlo después.
+    private static boolean permitido(String tag, long ahora) {
+        if (maxPorSeg <= 0) return true;
+
+        Limite l = limites.get(tag);
+        if (l == null) {
+            l = new Limite();
+            Limite prev = limites.putIfAbsent(tag, l);
+            if (prev != null) l = prev;
+        }
+        return l.tomar(ahora, maxPorSeg);
+    }
+
+    private static final class Limite {
+        private long ventana;
+        private int usados;
+        private int suprimidos;
+
+        synchronized boolean tomar(long ahora, int max) {
+            long v = ahora / 1000L;
+            if (v != ventana) {
+                ventana = v;
+                usados = 0;
+            }
+            if (usados < max) {
+                usados++;
+                return true;
+            }
+            suprimidos++;
+            return false;
+        }
+
+        synchronized int rotar() {
+            int n = suprimidos;
+            suprimidos = 0;
+            return n;
+        }
+    }
+
+    private static final class Entrada {
+        volatile long seq = -1L;
+        long ms;
+        int nivel;
+        String tag;
+        String plantilla;
+        int nargs;
+        Object a, b, c;
+        Throwable t;
+    }
+
+    // =========================
+    // Consumidor
+    // =========================
+    private static void loop() {
+        SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss.SSS");
+        Date fecha = new Date();
+        StringBuilder sb = new StringBuilder(256);
+        long ultimoReporte = System.currentTimeMillis();
+
+        while (true) {
+            boolean escribioOut = false;
+            boolean escribioErr = false;
+
+            long n = consumido;
+            while (true) {
+                Entrada e = ring[(int) (n & MASK)];
+                if (e.seq != n) break;
+
+                fecha.setTime(e.ms);
+                sb.setLength(0);
+                sb.append(sdf.format(fecha)).append(' ').append(ETIQUETA[e.nivel])
+                    .append(" [").append(e.tag).append("] ");
+                formatear(sb, e.plantilla, e.nargs, e.a, e.b, e.c);
+
+                PrintStream out = e.nivel == ERROR ? System.err : System.out;
+                out.append(sb).append('\n');
+                if (e.t != null) e.t.printStackTrace(out);
+                if (e.nivel == ERROR) escribioErr = true; else escribioOut = true;
+
+                e.tag = null;
+                e.plantilla = null;
+                e.a = e.b = e.c = null;
+                e.t = null;
+                n++;
+                consumido = n;
+            }
+
+            long ahora = System.currentTimeMillis();
+            if (ahora - ultimoReporte >= 1000L) {
+                ultimoReporte = ahora;
+                for (java.util.Map.Entry<String, Limite> me : limites.entrySet()) {
+                    int sup = me.getValue().rotar();
+                    if (sup > 0) {
+                        System.out.append(sdf.format(new Date(ahora))).append(" [WARN] [LOG] ")
+                            .append(me.getKey()).append(": ").append(String.valueOf(sup))
+                            .append(" líneas suprimidas por límite de tasa\n");
+                        escribioOut = true;
+                    }
+                }
+            }
+
+            if (escribioOut) System.out.flush();
+            if (escribioErr) System.err.flush();
+
+            if (!escribioOut && !escribioErr) LockSupport.parkNanos(5_000_000L);
+        }
+    }
+
+    // Reemplaza cada {} por el siguiente argumento
+    private static void formatear(StringBuilder sb, String plantilla, int nargs, Object a, Object b, Object c) {
+        if (plantilla == null) return;
+        if (nargs == 0) {
+            sb.append(plantilla);
+            return;
+        }
+
+        int arg = 0;
+        int desde = 0;
+        while (true) {
+            int i = plantilla.indexOf("{}", desde);
+            if (i < 0 || arg >= nargs) break;
+            sb.append(plantilla, desde, i);
+            sb.append(arg == 0 ? a : arg == 1 ? b : c);
+            arg++;
+            desde = i + 2;
+        }
+        sb.append(plantilla, desde, plantilla.length());
+    }
+
+    private static int parseNivel(String s) {
+        switch (s.trim().toUpperCase()) {
+            case "DEBUG": return DEBUG;
+            case "WARN": return WARN;
+            case "ERROR": return ERROR;
+            default: return INFO;
+        }
     }
 
-    private static String ts() {
-        return SDF.format(new Date());
+    private static Set<String> parseTags(String s) {
+        Set<String> out = new HashSet<>();
+        for (String t : s.split(",")) {
+            if (!t.trim().isEmpty()) out.add(t.trim());
+        }
+        return Collections.unmodifiableSet(out);
     }
 }
@@ -0,0 +1,106 @@
+package red;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Parseo de los mensajes de texto del protocolo directo sobre los bytes recibidos,
+// sin armar un String. Todas las lecturas son absolutas sobre [position, limit).
+final class MensajeBytes {
+
+    static final int SIN_NUMERO = Integer.MIN_VALUE;
+
+    private MensajeBytes() {}
+
+    static byte[] literal(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // Equivalente a String.trim(): ajusta position/limit salteando espacios y controles
+    static void trim(ByteBuffer b) {
+        int ini = b.position();
+        int fin = b.limit();
+        while (ini < fin && (b.get(ini) & 0xFF) <= ' ') ini++;
+        while (fin > ini && (b.get(fin - 1) & 0xFF) <= ' ') fin--;
+        b.limit(fin);
+        b.position(ini);
+    }
+
+    static boolean igual(ByteBuffer b, byte[] lit) {
+        return b.remaining() == lit.length && empiezaCon(b, lit);
+    }
+
+    static boolean empiezaCon(ByteBuffer b, byte[] lit) {
+        if (b.remaining() < lit.length) return false;
+        int p = b.position();
+        for (int i = 0; i < lit.length; i++) {
+            if (b.get(p + i) != lit[i]) return false;
+        }
+        return true;
+    }
+
+    // Índice absoluto justo después de la primera aparición de lit, o -1
+    static int despuesDe(ByteBuffer b, byte[] lit) {
+        int fin = b.limit() - lit.length;
+        for (int p = b.position(); p <= fin; p++) {
+            int i = 0;
+            while (i < lit.length && b.get(p + i) == lit[i]) i++;
+            if (i == lit.length) return p + lit.length;
+        }
+        return -1;
+    }
+
+    static boolean contiene(ByteBuffer b, byte[] lit) {
+        return despuesDe(b, lit) >= 0;
+    }
+
+    // Entero decimal (con signo opcional) desde el índice absoluto idx. SIN_NUMERO si no hay dígitos.
+    static int leerEntero(ByteBuffer b, int idx) {
+        if (idx < 0) return SIN_NUMERO;
+        int fin = b.limit();
+        boolean neg = false;
+        if (idx < fin && b.get(idx) == '-') {
+            neg = true;
+            idx++;
+        }
+        long v = 0;
+        int digitos = 0;
+        while (idx < fin) {
+            int d = b.get(idx) - '0';
+            if (d < 0 || d > 9) break;
+            v = v * 10 + d;
+            if (v > Integer.MAX_VALUE) return SIN_NUMERO;
+            idx++;
+            digitos++;
+        }
+        if (digitos == 0) return SIN_NUMERO;
+        return (int) (neg ? -v : v);
+    }
+
+    // Índice absoluto justo después del entero que arranca en idx (el que lee leerEntero)
+    static int finEntero(ByteBuffer b, int idx) {
+        int fin = b.limit();
+        if (idx < fin && b.get(idx) == '-') idx++;
+        while (idx < fin) {
+            int d = b.get(idx) - '0';
+            if (d < 0 || d > 9) break;
+            idx++;
+        }
+        return idx;
+    }
+
+    // Valor entero del campo "clave=" (la clave incluye el '='), o SIN_NUMERO
+    static int campoEntero(ByteBuffer b, byte[] clave) {
+        return leerEntero(b, despuesDe(b, clave));
+    }
+
+    static byte ultimo(ByteBuffer b) {
+        return b.hasRemaining() ? b.get(b.limit() - 1) : 0;
+    }
+
+    // Solo para logs / casos raros
+    static String texto(ByteBuffer b) {
+        byte[] tmp = new byte[b.remaining()];
+        b.duplicate().get(tmp);
+        return new String(tmp, StandardCharsets.UTF_8);
+    }
+}
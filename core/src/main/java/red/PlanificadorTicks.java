@@ -0,0 +1,184 @@
+package red;
+
+import com.badlogic.Flappy.SnapshotFormat;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Un pool chico de hilos (uno por core) que avanza todas las salas en juego a paso fijo.
+// Cada worker lleva un deadline absoluto: si se atrasa, recupera ticks de a uno (catch-up)
+// con el mismo dt, así el promedio queda en TICK_NS sin importar cuántas salas haya.
+final class PlanificadorTicks {
+
+    interface PasoSala {
+        void tick(Sala sala, int worker);
+
+        // Al terminar cada pasada de un worker por todas sus salas
+        default void finPasada(int worker) {}
+
+        // La sala dejó de simularse en ese worker (ya no va a recibir más tick). Hasta acá
+        // el worker puede seguir tocándola: recién después se puede reusar.
+        default void quitada(Sala sala, int worker) {}
+    }
+
+    // El dt de cada paso es SnapshotFormat.TICK_DT (lo aplica GameSim)
+    static final long TICK_NS = 1_000_000_000L / SnapshotFormat.TICK_RATE; // 16.666 ms
+
+    // Si un worker se atrasa más que esto, resincroniza en vez de seguir recuperando
+    private static final int MAX_CATCHUP = 5;
+
+    private final PasoSala paso;
+    private final Worker[] workers;
+    private volatile boolean activo = true;
+
+    // Métricas
+    private final AtomicLong ticksTotales = new AtomicLong();
+    private final AtomicLong ticksRecuperados = new AtomicLong(); // corridos tarde (catch-up)
+    private final AtomicLong ticksDescartados = new AtomicLong(); // perdidos al resincronizar
+    private final AtomicLong overruns = new AtomicLong();         // pasadas que superaron TICK_NS
+
+    PlanificadorTicks(int hilos, PasoSala paso) {
+        this.paso = paso;
+        this.workers = new Worker[Math.max(1, hilos)];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i);
+        }
+    }
+
+    int hilos() {
+        return workers.length;
+    }
+
+    void iniciar() {
+        for (Worker w : workers) w.start();
+    }
+
+    void detener() {
+        activo = false;
+        for (Worker w : workers) w.interrupt();
+    }
+
+    // Reparte al worker con menos salas. Llamar bajo el lock del server.
+    void agregar(Sala sala) {
+        Worker mejor = workers[0];
+        for (int i = 1; i < workers.length; i++) {
+            if (workers[i].carga < mejor.carga) mejor = workers[i];
+        }
+        sala.worker = mejor.indice;
+        mejor.carga++;
+        mejor.ops.add(new Op(sala, true));
+        LockSupport.unpark(mejor);
+    }
+
+    // La baja se aplica en la próxima pasada del worker, que avisa con PasoSala#quitada.
+    // false si la sala no estaba en ningún worker. Llamar bajo el lock del server.
+    boolean quitar(Sala sala) {
+        if (sala.worker < 0) return false;
+        Worker w = workers[sala.worker];
+        sala.worker = -1;
+        w.carga--;
+        w.ops.add(new Op(sala, false));
+        LockSupport.unpark(w);
+        return true;
+    }
+
+    String resumen() {
+        return "workers=" + workers.length
+            + " ticks=" + ticksTotales.get()
+            + " recuperados=" + ticksRecuperados.get()
+            + " descartados=" + ticksDescartados.get()
+            + " overruns=" + overruns.get();
+    }
+
+    private static final class Op {
+        final Sala sala;
+        final boolean alta;
+
+        Op(Sala sala, boolean alta) {
+            this.sala = sala;
+            this.alta = alta;
+        }
+    }
+
+    private final class Worker extends Thread {
+        final int indice;
+        final ConcurrentLinkedQueue<Op> ops = new ConcurrentLinkedQueue<>();
+        final ArrayList<Sala> salas = new ArrayList<>();
+
+        // Solo para balancear (se toca bajo el lock del server)
+        int carga = 0;
+
+        Worker(int indice) {
+            super("ServidorFlappy-Tick-" + indice);
+            this.indice = indice;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long deadline = System.nanoTime();
+
+            while (activo) {
+                aplicarOps();
+
+                if (salas.isEmpty()) {
+                    // Nada que simular: duermo hasta que me agreguen una sala
+                    LockSupport.parkNanos(this, 100_000_000L);
+                    deadline = System.nanoTime();
+                    continue;
+                }
+
+                long now = System.nanoTime();
+                if (now < deadline) {
+                    LockSupport.parkNanos(this, deadline - now);
+                    continue;
+                }
+
+                int pasos = 0;
+                while (now >= deadline && pasos < MAX_CATCHUP) {
+                    long t0 = System.nanoTime();
+                    tickSalas();
+                    if (System.nanoTime() - t0 > TICK_NS) overruns.incrementAndGet();
+
+                    if (pasos > 0) ticksRecuperados.incrementAndGet();
+                    ticksTotales.incrementAndGet();
+                    deadline += TICK_NS;
+                    pasos++;
+                    now = System.nanoTime();
+                }
+
+                if (now >= deadline) {
+                    // Demasiado atrasado: descarto lo que falta y vuelvo a fase
+                    long perdidos = (now - deadline) / TICK_NS + 1;
+                    ticksDescartados.addAndGet(perdidos);
+                    deadline += perdidos * TICK_NS;
+                }
+            }
+        }
+
+        private void aplicarOps() {
+            Op op;
+            while ((op = ops.poll()) != null) {
+                if (op.alta) {
+                    if (!salas.contains(op.sala)) salas.add(op.sala);
+                } else if (salas.remove(op.sala)) {
+                    paso.quitada(op.sala, indice);
+                }
+            }
+        }
+
+        private void tickSalas() {
+            for (int i = 0; i < salas.size(); i++) {
+                Sala s = salas.get(i);
+                try {
+                    paso.tick(s, indice);
+                } catch (Exception e) {
+                    LoggerRed.error("SIM", "Excepción en tick de sala " + s.id, e);
+                }
+            }
+            paso.finPasada(indice);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package red;
+
+import java.nio.ByteBuffer;
+
+// Pool fijo de ByteBuffers directos para recibir datagramas sin allocar.
+// Si se vacía, entrega uno nuevo (y lo cuenta); devolver de más se descarta.
+final class PoolBuffers {
+
+    private final int tamBuffer;
+    private final ByteBuffer[] libres;
+    private int cantidad;
+
+    private long creadosExtra = 0L;
+
+    PoolBuffers(int capacidad, int tamBuffer) {
+        this.tamBuffer = tamBuffer;
+        this.libres = new ByteBuffer[capacidad];
+        for (int i = 0; i < capacidad; i++) {
+            libres[i] = ByteBuffer.allocateDirect(tamBuffer);
+        }
+        this.cantidad = capacidad;
+    }
+
+    synchronized ByteBuffer tomar() {
+        if (cantidad == 0) {
+            creadosExtra++;
+            return ByteBuffer.allocateDirect(tamBuffer);
+        }
+        ByteBuffer b = libres[--cantidad];
+        libres[cantidad] = null;
+        b.clear();
+        return b;
+    }
+
+    synchronized void devolver(ByteBuffer b) {
+        if (cantidad < libres.length) libres[cantidad++] = b;
+    }
+
+    synchronized long creadosExtra() {
+        return creadosExtra;
+    }
+}
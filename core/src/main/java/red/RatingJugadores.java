@@ -0,0 +1,32 @@
+package red;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+// Rating de cada jugador para el matchmaking: promedio móvil de los puntajes con que
+// terminó sus últimas partidas. La clave es la que manda el cliente en QUEUE (jugador=...)
+// o, si no manda, su IP. Vive lo que vive el proceso.
+final class RatingJugadores {
+
+    // Sin partidas: al medio de la tabla
+    static final float INICIAL = 3f;
+
+    private static final float PESO = 0.3f;
+    private static final int MAX_CLAVES = 100_000;
+
+    private final ConcurrentHashMap<String, Float> rating = new ConcurrentHashMap<>();
+
+    float de(String clave) {
+        Float r = rating.get(clave);
+        return r == null ? INICIAL : r;
+    }
+
+    // Cualquier hilo
+    void registrar(String clave, int score) {
+        if (rating.size() >= MAX_CLAVES && !rating.containsKey(clave)) return;
+        rating.compute(clave, (k, r) -> (r == null ? INICIAL : r) * (1f - PESO) + score * PESO);
+    }
+
+    int cantidad() {
+        return rating.size();
+    }
+}
@@ -0,0 +1,241 @@
+package red;
+
+import com.badlogic.Flappy.Snapshot;
+import com.badlogic.Flappy.SnapshotDecoder;
+import com.badlogic.Flappy.SnapshotFormat;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+// Re-ejecuta headless las partidas grabadas por GrabacionPartida, tan rápido como da el
+// GameSim, y compara el estado final contra el hash guardado al cerrar. Sirve para
+// revisar muertes discutidas y para probar cambios de física contra partidas reales.
+// Antes de las partidas verifica que los snapshots binarios (completo y delta) de una
+// partida larga se decodifiquen en el cliente con los mismos termos que tiene el servidor.
+//
+// Uso: ReproductorPartidas <archivo.fmr | directorio>...
+// Sale con código 1 si alguna partida no reproduce el mismo estado final o la verificación
+// de snapshots falla.
+public final class ReproductorPartidas {
+
+    // Tick de la verificación de snapshots: ~15 min de partida, lejos de donde una x en
+    // short a 1/8 px ya saturaba (~tick 24400)
+    static final int TICK_VERIFICACION = 15 * 60 * SnapshotFormat.TICK_RATE;
+
+    static final class Resultado {
+        long seed;
+        int sala;
+        int ticks;
+        int saltos;     // entradas de salto re-aplicadas (las bajas no cuentan)
+        boolean cerrada;
+        boolean coincide;
+        int jugadores;
+        int vivos;
+        int[] scores;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Uso: ReproductorPartidas <archivo.fmr | directorio>...");
+            System.exit(2);
+        }
+
+        String error = verificarSnapshots(TICK_VERIFICACION);
+        System.out.println("snapshots tick=" + TICK_VERIFICACION + " " + (error == null ? "OK" : error));
+
+        List<Path> archivos = new ArrayList<>();
+        for (String a : args) juntar(Paths.get(a), archivos);
+        Collections.sort(archivos);
+
+        // Un GameSim por tamaño de sala, reusado entre archivos
+        GameSim[] sims = new GameSim[Sala.MAX_JUGADORES + 1];
+        long ticksTotales = 0L;
+        int distintas = 0;
+        long t0 = System.nanoTime();
+
+        for (Path p : archivos) {
+            Resultado r;
+            try {
+                r = reproducir(p, sims);
+            } catch (IOException | RuntimeException e) {
+                System.out.println(p.getFileName() + " ERROR " + e.getMessage());
+                distintas++;
+                continue;
+            }
+            ticksTotales += r.ticks;
+            if (r.cerrada && !r.coincide) distintas++;
+
+            System.out.printf(Locale.US, "%s sala=%d seed=%x ticks=%d saltos=%d jugadores=%d vivos=%d scores=%s %s%n",
+                p.getFileName(), r.sala, r.seed, r.ticks, r.saltos, r.jugadores, r.vivos,
+                Arrays.toString(r.scores), !r.cerrada ? "SIN_CIERRE" : r.coincide ? "OK" : "DISTINTO");
+        }
+
+        double seg = (System.nanoTime() - t0) / 1e9;
+        System.out.printf(Locale.US, "%d partidas, %d ticks en %.2f s (%.0f ticks/s), %d distintas%n",
+            archivos.size(), ticksTotales, seg, ticksTotales / Math.max(seg, 1e-9), distintas);
+
+        if (distintas > 0 || error != null) System.exit(1);
+    }
+
+    // Lleva una partida de 2 sin saltos hasta tick, codifica el snapshot completo de tick - 1
+    // y el delta de tick contra él, y los decodifica como el cliente. Devuelve null si los
+    // termos decodificados coinciden con los del servidor, o qué no coincidió.
+    static String verificarSnapshots(int tick) {
+        GameSim sim = new GameSim(2);
+        sim.resetForNewMatch(GameSim.SEED_PRUEBAS);
+        HistorialSnapshots historial = new HistorialSnapshots(2);
+        ByteBuffer buf = ByteBuffer.allocate(GameSim.maxStateBytes());
+
+        while (sim.tickCount() < tick - 1) sim.tick();
+        historial.registrar(sim.tickCount(), sim);
+        sim.writeState(sim.tickCount(), buf);
+        Snapshot base = new Snapshot();
+        if (!SnapshotDecoder.decode(buf.array(), buf.position(), GameSim.SEED_PRUEBAS, base)) return "completo no decodifica";
+        String error = compararTermos(sim, base, "completo");
+        if (error != null) return error;
+
+        sim.tick();
+        historial.registrar(sim.tickCount(), sim);
+        buf.clear();
+        historial.writeDelta(sim.tickCount(), base.tick, 1, 3L, 3L, buf);
+        Snapshot delta = new Snapshot();
+        if (!SnapshotDecoder.decodeDelta(buf.array(), buf.position(), base, GameSim.SEED_PRUEBAS, delta)) return "delta no decodifica";
+        return compararTermos(sim, delta, "delta");
+    }
+
+    private static String compararTermos(GameSim sim, Snapshot s, String tipo) {
+        if (s.tick != sim.tickCount() || s.termoFirstId != sim.firstTermoId() || s.termoCount != sim.termoCount()) {
+            return tipo + ": tick/termos " + s.tick + "/" + s.termoFirstId + "+" + s.termoCount
+                + " != " + sim.tickCount() + "/" + sim.firstTermoId() + "+" + sim.termoCount();
+        }
+        for (int i = 0; i < s.termoCount; i++) {
+            float dx = Math.abs(s.termoX[i] - sim.termoX(i));
+            float dy = Math.abs(s.termoGapY[i] - sim.termoGapY(i));
+            if (dx > 0.5f / SnapshotFormat.POS_SCALE || dy > 0.5f / SnapshotFormat.POS_SCALE) {
+                return String.format(Locale.US, "%s: termo %d x=%.2f gap=%.2f != x=%.2f gap=%.2f", tipo,
+                    sim.termoId(i), s.termoX[i], s.termoGapY[i], sim.termoX(i), sim.termoGapY(i));
+            }
+        }
+        return null;
+    }
+
+    private static void juntar(Path p, List<Path> out) throws IOException {
+        if (!Files.isDirectory(p)) {
+            out.add(p);
+            return;
+        }
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(p, "*" + GrabacionPartida.EXTENSION)) {
+            for (Path f : ds) out.add(f);
+        }
+    }
+
+    static Resultado reproducir(Path archivo, GameSim[] sims) throws IOException {
+        try (FileChannel ch = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            int magic = b.remaining() < 24 ? 0 : b.getInt();
+            boolean v3 = magic == GrabacionPartida.MAGIC;
+            if (!v3 && magic != GrabacionPartida.MAGIC_V2 && magic != GrabacionPartida.MAGIC_V1) {
+                throw new IOException("no es una grabación");
+            }
+
+            Resultado r = new Resultado();
+            r.seed = b.getLong();
+            r.sala = b.getInt();
+            b.getLong(); // inicio
+
+            // FMR1/FMR2: siempre 2 jugadores
+            int jugadores = 2;
+            long presentes = 3L;
+            if (v3) {
+                jugadores = b.get() & 0xFF;
+                presentes = b.getLong();
+                if (jugadores < Sala.MIN_JUGADORES || jugadores > Sala.MAX_JUGADORES) {
+                    throw new IOException("jugadores=" + jugadores);
+                }
+            }
+            GameSim sim = sims[jugadores];
+            if (sim == null) sim = sims[jugadores] = new GameSim(jugadores);
+
+            sim.resetForNewMatch(r.seed, presentes);
+            int finalTick = -1;
+            int hash = 0;
+            int seq = 0;
+
+            try {
+                while (b.hasRemaining()) {
+                    int delta = GrabacionPartida.getVarint(b);
+                    if (delta == 0) {
+                        finalTick = b.getInt();
+                        hash = b.getInt();
+                        r.cerrada = true;
+                        break;
+                    }
+                    // Los saltos se aplicaron en el paso que dejó tickCount en objetivo. Un salto
+                    // rebobinado se vuelve a encolar con el mismo tick atrasado que tuvo en vivo,
+                    // y una baja se marca antes de ese paso, igual que en vivo.
+                    int objetivo = sim.tickCount() + delta;
+                    while (sim.tickCount() < objetivo - 1) sim.tick();
+                    seq = v3 ? leerEvento(b, sim, seq, r) : leerEventoV1(b, sim, seq, magic, r);
+                    sim.tick();
+                }
+            } catch (BufferUnderflowException cortado) {
+                // Archivo sin cierre (o cortado a la mitad): llego hasta el último evento entero
+            }
+
+            while (sim.tickCount() < finalTick) sim.tick();
+
+            r.ticks = sim.tickCount();
+            r.coincide = r.cerrada && GrabacionPartida.hashEstado(sim) == hash;
+            r.jugadores = jugadores;
+            r.vivos = sim.vivos();
+            r.scores = new int[jugadores];
+            for (int id = 1; id <= jugadores; id++) r.scores[id - 1] = sim.score(id);
+            return r;
+        }
+    }
+
+    // Entradas de un evento FMR3 (ver GrabacionPartida). Devuelve el último seq usado.
+    private static int leerEvento(ByteBuffer b, GameSim sim, int seq, Resultado r) {
+        int n = GrabacionPartida.getVarint(b);
+        for (int k = 0; k < n; k++) {
+            int e = b.get() & 0xFF;
+            int id = e & ~GrabacionPartida.BAJA;
+            if ((e & GrabacionPartida.BAJA) != 0) {
+                sim.eliminar(id);
+                continue;
+            }
+            int atras = GrabacionPartida.getVarint(b);
+            if (atras == 0) sim.queueJump(id);
+            else sim.queueJump(id, ++seq, sim.tickCount() - atras);
+            r.saltos++;
+        }
+        return seq;
+    }
+
+    // Byte máscara de FMR1/FMR2
+    private static int leerEventoV1(ByteBuffer b, GameSim sim, int seq, int magic, Resultado r) {
+        int saltos = b.get() & 0xFF;
+        boolean v2 = magic == GrabacionPartida.MAGIC_V2;
+        int atras1 = v2 && (saltos & GrabacionPartida.BIT_REBOBINADO_P1) != 0 ? GrabacionPartida.getVarint(b) : 0;
+        int atras2 = v2 && (saltos & GrabacionPartida.BIT_REBOBINADO_P2) != 0 ? GrabacionPartida.getVarint(b) : 0;
+        if ((saltos & 1) != 0) sim.queueJump(1);
+        if ((saltos & 2) != 0) sim.queueJump(2);
+        if (atras1 > 0) sim.queueJump(1, ++seq, sim.tickCount() - atras1);
+        if (atras2 > 0) sim.queueJump(2, ++seq, sim.tickCount() - atras2);
+        r.saltos += Integer.bitCount(saltos & 3) + (atras1 > 0 ? 1 : 0) + (atras2 > 0 ? 1 : 0);
+        return seq;
+    }
+}
@@ -0,0 +1,98 @@
+package red;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Rueda de tiempos (hashed timing wheel) para los timeouts de clientes. Cada cliente está
+// en el casillero del tick (de RESOLUCION_MS) en que vencería, enlazado por campos propios
+// de Cliente, así que agendar y sacar son O(1) y sin allocar.
+//
+// Un mensaje recibido no toca la rueda: solo escribe Cliente.ultimoMsgMs. Cuando llega el
+// casillero, el que mandó algo mientras tanto se vuelve a agendar con su vencimiento nuevo
+// y el que se dio de baja se descarta. Así cada cliente cuesta a lo sumo una reinserción
+// por período de timeout, esté activo o no, y nadie recorre la lista entera.
+//
+// La rueda la maneja un solo hilo (el de timeouts); los demás solo llaman a agendar().
+final class RuedaTimeouts {
+
+    static final long RESOLUCION_MS = 100L;
+
+    private final long timeoutMs;
+    private final int mask;
+    private final Cliente[] casilleros;
+
+    // Altas desde el hilo receptor; las toma el de timeouts en cada avance
+    private final ConcurrentLinkedQueue<Cliente> altas = new ConcurrentLinkedQueue<>();
+
+    private long tickActual = -1;
+    private int agendados;
+
+    RuedaTimeouts(long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        // Que el timeout entre en una vuelta: casi nunca hay que saltear por rondas
+        int n = Integer.highestOneBit((int) (timeoutMs / RESOLUCION_MS) * 2 - 1);
+        this.casilleros = new Cliente[Math.max(n, 16)];
+        this.mask = casilleros.length - 1;
+    }
+
+    // Cualquier hilo
+    void agendar(Cliente c) {
+        altas.add(c);
+    }
+
+    int agendados() {
+        return agendados;
+    }
+
+    // Procesa los ticks hasta ahoraMs y deja en vencidos los clientes sin mensajes hace más
+    // de timeoutMs (ya fuera de la rueda)
+    void avanzar(long ahoraMs, List<Cliente> vencidos) {
+        long hasta = ahoraMs / RESOLUCION_MS;
+        if (tickActual < 0) tickActual = hasta;
+
+        Cliente c;
+        while ((c = altas.poll()) != null) {
+            if (c.registrado) insertar(c, c.ultimoMsgMs + timeoutMs);
+        }
+
+        for (; tickActual <= hasta; tickActual++) {
+            int i = (int) (tickActual & mask);
+            c = casilleros[i];
+            while (c != null) {
+                Cliente sig = c.ruedaSig;
+                if (c.ruedaTick > tickActual) {
+                    // Vence en otra vuelta
+                } else if (!c.registrado) {
+                    sacar(c);
+                } else {
+                    long vence = c.ultimoMsgMs + timeoutMs;
+                    sacar(c);
+                    if (vence > ahoraMs) insertar(c, vence);
+                    else vencidos.add(c);
+                }
+                c = sig;
+            }
+        }
+    }
+
+    private void insertar(Cliente c, long venceMs) {
+        // Nunca en un tick ya procesado: como mucho en el que viene
+        long t = Math.max(venceMs / RESOLUCION_MS, tickActual + 1);
+        int i = (int) (t & mask);
+        c.ruedaTick = t;
+        c.ruedaAnt = null;
+        c.ruedaSig = casilleros[i];
+        if (c.ruedaSig != null) c.ruedaSig.ruedaAnt = c;
+        casilleros[i] = c;
+        agendados++;
+    }
+
+    private void sacar(Cliente c) {
+        if (c.ruedaAnt != null) c.ruedaAnt.ruedaSig = c.ruedaSig;
+        else casilleros[(int) (c.ruedaTick & mask)] = c.ruedaSig;
+        if (c.ruedaSig != null) c.ruedaSig.ruedaAnt = c.ruedaAnt;
+        c.ruedaSig = null;
+        c.ruedaAnt = null;
+        agendados--;
+    }
+}
@@ -0,0 +1,116 @@
+package red;
+
+// Una partida de 2 a capacidad jugadores. El GameSim se conserva entre partidas: cuando
+// la sala queda vacía vuelve al pool de GestorSalas y se reusa tal cual para el próximo grupo.
+final class Sala {
+    static final int MIN_JUGADORES = 2;
+    static final int MAX_JUGADORES = 64; // un bit por jugador en las máscaras de GameSim
+
+    final int id;
+    final int capacidad;
+    final GameSim sim;
+
+    // Jugadores por slot (1..capacidad). index 0 sin uso, igual que sim.ready
+    final Cliente[] jugadores;
+
+    volatile boolean partidaActiva = false;
+
+    // Baselines para los snapshots delta
+    final HistorialSnapshots historial;
+
+    // Qué mates van en el snapshot de cada espectador (lo usa solo el worker)
+    final InteresJugadores interes;
+
+    // Worker de PlanificadorTicks que la simula (-1 = ninguno)
+    int worker = -1;
+
+    // Se le pidió al worker que la suelte y todavía no avisó (PasoSala#quitada): mientras
+    // tanto no arranca otra partida ni vuelve al pool. Se toca bajo el lock del server.
+    boolean saliendo;
+
+    // Tick de la partida en curso (lo avanza solo el worker)
+    int tick = 0;
+
+    // Grabación de la partida en curso, null si no se graba (la toca solo el worker)
+    GrabacionPartida grabacion;
+
+    // Última ronda de timeouts que ya la resolvió (solo el hilo de timeouts)
+    int rondaTimeout;
+
+    // Métricas de costo (las escribe solo el worker)
+    volatile long ticks = 0L;
+    volatile long nsSim = 0L;
+
+    Sala(int id, int capacidad) {
+        this.id = id;
+        this.capacidad = capacidad;
+        this.sim = new GameSim(capacidad);
+        this.jugadores = new Cliente[capacidad + 1];
+        this.historial = new HistorialSnapshots(capacidad);
+        this.interes = new InteresJugadores(capacidad);
+    }
+
+    int slotLibre() {
+        for (int i = 1; i <= capacidad; i++) {
+            if (jugadores[i] == null) return i;
+        }
+        return -1;
+    }
+
+    int cantidad() {
+        int n = 0;
+        for (int i = 1; i <= capacidad; i++) {
+            if (jugadores[i] != null) n++;
+        }
+        return n;
+    }
+
+    boolean llena() {
+        return slotLibre() == -1;
+    }
+
+    boolean vacia() {
+        return cantidad() == 0;
+    }
+
+    boolean hayClientes(boolean binario) {
+        for (int i = 1; i <= capacidad; i++) {
+            Cliente c = jugadores[i];
+            if (c != null && c.binario == binario) return true;
+        }
+        return false;
+    }
+
+    // Slots ocupados, bit i-1 (lo que recibe GameSim#resetForNewMatch)
+    long presentes() {
+        long m = 0L;
+        for (int i = 1; i <= capacidad; i++) {
+            if (jugadores[i] != null) m |= 1L << (i - 1);
+        }
+        return m;
+    }
+
+    // Arranca con al menos MIN_JUGADORES, todos listos. En una sala de 2 eso es que esté llena.
+    boolean todosListos() {
+        int n = 0;
+        for (int i = 1; i <= capacidad; i++) {
+            if (jugadores[i] == null) continue;
+            if (!sim.ready[i]) return false;
+            n++;
+        }
+        return n >= MIN_JUGADORES;
+    }
+
+    void limpiar() {
+        for (int i = 1; i <= capacidad; i++) {
+            jugadores[i] = null;
+        }
+        sim.resetLobbyAfterAbort();
+        partidaActiva = false;
+        worker = -1;
+        saliendo = false;
+        tick = 0;
+        ticks = 0L;
+        nsSim = 0L;
+    }
+}
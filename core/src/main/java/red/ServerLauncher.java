@@ -10,7 +10,7 @@ public final class ServerLauncher {
             try {
                 port = Integer.parseInt(args[0]);
             } catch (Exception ignored) {
-                System.out.println("[SERVER] Puerto inválido en args, usando 4321.");
+                LoggerRed.warn("BOOT", "Puerto inválido en args, usando 4321.");
             }
         }
 
@@ -23,6 +23,7 @@ public final class ServerLauncher {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             LoggerRed.warn("BOOT", "Shutdown hook: apagando servidor...");
             server.apagarServidor("shutdown_hook");
+            LoggerRed.flush(500);
         }));
     }
 }
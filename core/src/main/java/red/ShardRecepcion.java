@@ -0,0 +1,209 @@
+package red;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Un socket UDP del puerto del servidor con su hilo de recepción. Con -Dflappy.shards=N se
+// abren N en el mismo puerto (SO_REUSEPORT) y el kernel reparte los datagramas por dirección
+// de origen, así que los jugadores de una sala pueden caer en shards distintos. Cada sala
+// tiene un shard dueño (HiloServidorFlappy#shardDe) y los paquetes de sus clientes que
+// llegan a otro se le pasan por un anillo por par de shards (un productor, un consumidor,
+// como ColaEnvio.Productor): todo lo de una sala (BuzonEntradas, ACK, tasa) lo procesa un
+// solo hilo.
+final class ShardRecepcion {
+
+    // Lo que hace el servidor con cada datagrama (el propio o uno que le pasó otro shard)
+    interface Procesador {
+        void paquete(ByteBuffer msg, InetSocketAddress origen, ShardRecepcion shard);
+    }
+
+    // Paquetes en camino por anillo (origen -> este shard) antes de descartar, y el largo
+    // máximo de uno: lo que mandan los clientes (INPUT con 8 saltos, QUEUE) entra de sobra
+    private static final int REENVIOS_POR_ANILLO = 1024;
+    static final int MAX_REENVIO = 256;
+
+    // Datagramas del socket por vuelta: entre vuelta y vuelta se atienden los reenviados
+    private static final int LOTE_SOCKET = 256;
+
+    final int indice;
+    final DatagramChannel canal;
+    private final Selector selector;
+    private final PoolBuffers buffers;
+    private final Procesador procesador;
+
+    // Por shard de origen; el propio queda en null
+    private Anillo[] entrantes = new Anillo[0];
+
+    // true mientras el hilo está (o está por quedarse) en select(): el que reenvía lo despierta
+    private volatile boolean durmiendo;
+    private volatile boolean activo = true;
+
+    // Métricas: cada una la escribe solo el hilo de este shard
+    private volatile long recibidos;   // datagramas leídos de su socket
+    private volatile long bytes;
+    private volatile long reenviados;  // pasados al shard dueño de la sala
+    private volatile long deOtros;     // recibidos de otros shards
+    private volatile long descartados; // anillo lleno (o paquete más largo que MAX_REENVIO)
+
+    ShardRecepcion(int indice, DatagramChannel canal, PoolBuffers buffers, Procesador procesador) throws IOException {
+        this.indice = indice;
+        this.canal = canal;
+        this.buffers = buffers;
+        this.procesador = procesador;
+        canal.configureBlocking(false);
+        selector = Selector.open();
+        canal.register(selector, SelectionKey.OP_READ);
+    }
+
+    // Una vez, con todos los shards creados
+    void conectar(int shards) {
+        Anillo[] a = new Anillo[shards];
+        for (int k = 0; k < shards; k++) {
+            if (k != indice) a[k] = new Anillo(REENVIOS_POR_ANILLO);
+        }
+        entrantes = a;
+    }
+
+    // Loop del hilo del shard hasta detener()
+    void correr() {
+        while (activo) {
+            try {
+                durmiendo = true;
+                if (hayReenvios()) selector.selectNow();
+                else selector.select();
+                durmiendo = false;
+                selector.selectedKeys().clear();
+
+                recibirPendientes();
+                procesarReenvios();
+            } catch (ClosedChannelException | ClosedSelectorException ce) {
+                if (!activo) break;
+                LoggerRed.error("SOCKET", "Canal cerrado en receive() (shard " + indice + ")", ce);
+                break;
+            } catch (Exception e) {
+                if (!activo) break;
+                LoggerRed.error("SERVER", "Excepción en loop de recepción (shard " + indice + ")", e);
+            }
+        }
+    }
+
+    void detener() {
+        activo = false;
+        try {
+            selector.close();
+            canal.close();
+        } catch (IOException ignored) {}
+    }
+
+    // Solo desde el hilo de este shard: el paquete es de una sala de destino
+    void reenviar(ShardRecepcion destino, ByteBuffer msg, InetSocketAddress origen) {
+        if (!destino.entrantes[indice].publicar(msg, origen)) {
+            descartados++;
+            return;
+        }
+        reenviados++;
+        if (destino.durmiendo) destino.selector.wakeup();
+    }
+
+    // 0:rx=1200/96KB fw=300 in=280 desc=0
+    String resumen() {
+        return indice + ":rx=" + recibidos + "/" + (bytes / 1024L) + "KB fw=" + reenviados
+            + " in=" + deOtros + " desc=" + descartados;
+    }
+
+    // Drena el socket (no bloqueante) hasta LOTE_SOCKET; lo que quede lo ve el próximo select
+    private void recibirPendientes() throws IOException {
+        ByteBuffer buf = buffers.tomar();
+        try {
+            for (int n = 0; n < LOTE_SOCKET && activo; n++) {
+                buf.clear();
+                SocketAddress origen = canal.receive(buf);
+                if (origen == null) break;
+
+                buf.flip();
+                recibidos++;
+                bytes += buf.remaining();
+                try {
+                    procesador.paquete(buf, (InetSocketAddress) origen, this);
+                } catch (Exception e) {
+                    LoggerRed.error("SERVER", "Excepción procesando paquete de " + origen, e);
+                }
+            }
+        } finally {
+            buffers.devolver(buf);
+        }
+    }
+
+    private boolean hayReenvios() {
+        for (Anillo a : entrantes) {
+            if (a != null && a.pendientes() > 0) return true;
+        }
+        return false;
+    }
+
+    private void procesarReenvios() {
+        for (Anillo a : entrantes) {
+            if (a == null) continue;
+            long h = a.cabeza.get();
+            long t = a.cola.get();
+            for (; h < t; h++) {
+                int i = (int) (h & a.mask);
+                InetSocketAddress origen = a.origenes[i];
+                a.origenes[i] = null;
+                deOtros++;
+                try {
+                    procesador.paquete(a.datos[i], origen, this);
+                } catch (Exception e) {
+                    LoggerRed.error("SERVER", "Excepción procesando paquete de " + origen, e);
+                }
+            }
+            a.cabeza.lazySet(t);
+        }
+    }
+
+    // Un productor (el shard de origen), un consumidor (este). Copia el datagrama a un buffer
+    // propio del slot, así el de recepción se reusa enseguida.
+    private static final class Anillo {
+        final ByteBuffer[] datos;
+        final InetSocketAddress[] origenes;
+        final int mask;
+
+        final AtomicLong cola = new AtomicLong();   // la escribe el shard de origen
+        final AtomicLong cabeza = new AtomicLong(); // la escribe el dueño
+
+        Anillo(int capacidad) {
+            int cap = Integer.highestOneBit(Math.max(2, capacidad) - 1) << 1;
+            datos = new ByteBuffer[cap];
+            origenes = new InetSocketAddress[cap];
+            mask = cap - 1;
+            for (int i = 0; i < cap; i++) datos[i] = ByteBuffer.allocate(MAX_REENVIO);
+        }
+
+        boolean publicar(ByteBuffer msg, InetSocketAddress origen) {
+            if (msg.remaining() > MAX_REENVIO) return false;
+            long t = cola.get();
+            if (t - cabeza.get() > mask) return false;
+            int i = (int) (t & mask);
+            ByteBuffer b = datos[i];
+            b.clear();
+            b.put(msg.duplicate());
+            b.flip();
+            origenes[i] = origen;
+            // Escritura volátil (no lazySet): el que publica lee después durmiendo del dueño
+            cola.set(t + 1);
+            return true;
+        }
+
+        int pendientes() {
+            return (int) (cola.get() - cabeza.get());
+        }
+    }
+}